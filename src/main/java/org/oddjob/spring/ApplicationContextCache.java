@@ -0,0 +1,285 @@
+package org.oddjob.spring;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * A cache of warm Spring Application Contexts so that a component that
+ * loads the same configuration again and again doesn't have to parse it
+ * and create all the singletons each time.
+ * <p>
+ * Contexts are cached against a configuration key (see
+ * {@link SpringBase#configurationKey()}). A cached context is only reused
+ * if the Oddjob values that were resolved into it when it was loaded
+ * still resolve to the same values. If they don't the context is closed
+ * and a new one is loaded. Only these values are checked. If Oddjob 
+ * replaces a bean that beans in a cached context were given through the
+ * parent context, the cached context keeps the bean it was given.
+ * <p>
+ * The cache holds at most <code>maxSize</code> contexts, closing the least
+ * recently used when full. Contexts that are in use are never closed this
+ * way, so while more than <code>maxSize</code> are in use the cache holds
+ * them all, and the extra ones are closed as they become least recently 
+ * used and are no longer in use. If an <code>idleTimeout</code> is given,
+ * contexts that haven't been used for that many milliseconds are also
+ * closed.
+ * <p>
+ * Contexts are loaded without holding the cache's lock, so loading one
+ * context doesn't hold up acquiring others. A thread acquiring a context 
+ * that another thread is loading waits for that load and then checks 
+ * the new context as it would a cached one.
+ *
+ * @see SpringJob
+ */
+public class ApplicationContextCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(
+			ApplicationContextCache.class);
+
+	/** The maximum number of contexts to hold. */
+	private final int maxSize;
+
+	/** Milliseconds a context may be unused before it's closed. 0 for never. */
+	private final long idleTimeout;
+
+	/** The contexts, least recently used first. */
+	private final Map<Object, Entry> entries =
+			new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+	/** Loads in progress, by key. */
+	private final Map<Object, CompletableFuture<Void>> loading =
+			new HashMap<Object, CompletableFuture<Void>>();
+
+	/** Used to evict idle contexts. Only created if there's a timeout. */
+	private ScheduledExecutorService evictor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxSize The maximum number of contexts to hold. Must be
+	 * at least 1.
+	 * @param idleTimeout Milliseconds a context may be unused before it
+	 * is closed. 0 or less means contexts are only closed when the cache
+	 * is full or closed.
+	 */
+	public ApplicationContextCache(int maxSize, long idleTimeout) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1.");
+		}
+		this.maxSize = maxSize;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Provide a context for the given configuration key, either from the
+	 * cache or by loading a new one. The context must not be closed by the
+	 * caller, instead it should be given back with {@link #release(Object)}
+	 * once it has been used.
+	 *
+	 * @param key The configuration key.
+	 * @param configurer A new configurer that will be used to check the
+	 * cached values are current and to load a new context if they aren't.
+	 * @param loader Function that loads a context with the configurer.
+	 *
+	 * @return A refreshed context. Never null.
+	 */
+	public ConfigurableApplicationContext acquire(Object key,
+			OddjobPropertyConfigurer configurer,
+			Function<OddjobPropertyConfigurer, ConfigurableApplicationContext> loader) {
+
+		CompletableFuture<Void> load;
+		while (true) {
+			CompletableFuture<Void> other;
+			synchronized (this) {
+				long now = System.currentTimeMillis();
+
+				evictIdle(now);
+
+				Entry entry = entries.get(key);
+				if (entry != null) {
+					if (entry.context.isActive() &&
+							configurer.isCurrent(entry.resolvedValues)) {
+						logger.debug("Reusing cached ApplicationContext for " + key);
+						entry.lastUsed = now;
+						++entry.inUse;
+						return entry.context;
+					}
+					entries.remove(key);
+					close(entry);
+				}
+
+				other = loading.get(key);
+				if (other == null) {
+					load = new CompletableFuture<Void>();
+					loading.put(key, load);
+					break;
+				}
+			}
+			logger.debug("Waiting for ApplicationContext being loaded for " + key);
+			try {
+				other.join();
+			}
+			catch (CompletionException | CancellationException e) {
+				// The other load failed, try loading it here.
+			}
+		}
+
+		ConfigurableApplicationContext context;
+		try {
+			context = loader.apply(configurer);
+		}
+		catch (RuntimeException | Error e) {
+			synchronized (this) {
+				loading.remove(key);
+			}
+			load.completeExceptionally(e);
+			throw e;
+		}
+
+		synchronized (this) {
+			loading.remove(key);
+			
+			Entry created = new Entry(context,
+					configurer.getResolvedValues(), System.currentTimeMillis());
+			created.inUse = 1;
+			entries.put(key, created);
+
+			for (Iterator<Entry> it = entries.values().iterator();
+					entries.size() > maxSize && it.hasNext(); ) {
+				Entry eldest = it.next();
+				if (eldest.inUse == 0) {
+					it.remove();
+					close(eldest);
+				}
+			}
+
+			if (idleTimeout > 0 && evictor == null) {
+				evictor = Executors.newSingleThreadScheduledExecutor(
+						new EvictorThreadFactory());
+				evictor.scheduleWithFixedDelay(new Runnable() {
+					@Override
+					public void run() {
+						evictIdle(System.currentTimeMillis());
+					}
+				}, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+			}
+		}
+		load.complete(null);
+
+		return context;
+	}
+
+	/**
+	 * Give back a context provided by {@link #acquire}. The idle time of 
+	 * the context starts from now.
+	 * 
+	 * @param key The configuration key the context was acquired with.
+	 */
+	public synchronized void release(Object key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.inUse > 0) {
+			--entry.inUse;
+			entry.lastUsed = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * Get the number of contexts currently cached.
+	 *
+	 * @return The number of contexts.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Close all cached contexts and stop evicting idle ones. The cache
+	 * may still be used after closing.
+	 */
+	public synchronized void close() {
+		if (evictor != null) {
+			evictor.shutdownNow();
+			evictor = null;
+		}
+		for (Entry entry : entries.values()) {
+			close(entry);
+		}
+		entries.clear();
+	}
+
+	/**
+	 * Close contexts that haven't been used within the idle timeout.
+	 *
+	 * @param now The time now.
+	 */
+	protected synchronized void evictIdle(long now) {
+		if (idleTimeout <= 0) {
+			return;
+		}
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+			Entry entry = it.next();
+			if (entry.inUse == 0 && now - entry.lastUsed >= idleTimeout) {
+				it.remove();
+				close(entry);
+			}
+		}
+	}
+
+	private static void close(Entry entry) {
+		logger.info("Closing cached ApplicationContext.");
+		try {
+			entry.context.close();
+		}
+		catch (RuntimeException e) {
+			logger.warn("Failed closing cached ApplicationContext.", e);
+		}
+	}
+
+	/**
+	 * A cached context.
+	 */
+	static class Entry {
+
+		private final ConfigurableApplicationContext context;
+
+		private final Map<String, String> resolvedValues;
+
+		private long lastUsed;
+		
+		private int inUse;
+
+		Entry(ConfigurableApplicationContext context,
+				Map<String, String> resolvedValues, long lastUsed) {
+			this.context = context;
+			this.resolvedValues = resolvedValues;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	/**
+	 * Create daemon threads so the evictor never keeps the JVM alive.
+	 */
+	static class EvictorThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ApplicationContextCache-Evictor");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package org.oddjob.spring;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.oddjob.arooa.convert.ArooaConversionException;
+import org.oddjob.arooa.registry.BeanDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link BeanDirectory} for a directory that is still being created, 
+ * such as the beans of an application context that is being refreshed 
+ * in the background. Lookups wait for the directory to be ready, up to a 
+ * timeout.
+ * <p>
+ * If the timeout elapses, or the directory will never be ready because 
+ * the component providing it was stopped, lookups behave as if the bean 
+ * doesn't exist. If the directory failed to be created an 
+ * {@link IllegalStateException} is thrown with the failure as the cause.
+ * 
+ * @see SpringService#setAsync(boolean)
+ */
+public class AwaitingBeanDirectory implements BulkBeanDirectory {
+
+	private static final Logger logger = LoggerFactory.getLogger(
+			AwaitingBeanDirectory.class);
+	
+	/** Provides the directory when ready. */
+	private final Future<? extends BeanDirectory> future;
+	
+	/** Milliseconds to wait. */
+	private final long timeout;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param future Provides the directory when ready.
+	 * @param timeout Milliseconds to wait for the directory.
+	 */
+	public AwaitingBeanDirectory(Future<? extends BeanDirectory> future, 
+			long timeout) {
+		if (future == null) {
+			throw new NullPointerException("No Future.");
+		}
+		this.future = future;
+		this.timeout = timeout;
+	}
+	
+	/**
+	 * Is the directory ready.
+	 * 
+	 * @return true if lookups will not wait.
+	 */
+	public boolean isReady() {
+		return future.isDone();
+	}
+	
+	/**
+	 * Wait for the directory.
+	 * 
+	 * @return The directory or null if it isn't available.
+	 */
+	protected BeanDirectory await() {
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (TimeoutException e) {
+			logger.warn("Timed out after " + timeout + 
+					"ms waiting for beans to be ready.");
+			return null;
+		}
+		catch (CancellationException e) {
+			return null;
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {
+				return null;
+			}
+			throw new IllegalStateException("Beans failed to become ready.", 
+					e.getCause());
+		}
+	}
+	
+	@Override
+	public String getIdFor(Object bean) {
+		BeanDirectory directory = await();
+		if (directory == null) {
+			return null;
+		}
+		return directory.getIdFor(bean);
+	}
+	
+	@Override
+	public <T> Iterable<T> getAllByType(Class<T> type) {
+		BeanDirectory directory = await();
+		if (directory == null) {
+			return Collections.emptyList();
+		}
+		return directory.getAllByType(type);
+	}
+	
+	@Override
+	public Object lookup(String path) {
+		BeanDirectory directory = await();
+		if (directory == null) {
+			return null;
+		}
+		return directory.lookup(path);
+	}
+	
+	@Override
+	public <T> T lookup(String path, Class<T> required)
+			throws ArooaConversionException {
+		BeanDirectory directory = await();
+		if (directory == null) {
+			return null;
+		}
+		return directory.lookup(path, required);
+	}
+	
+	@Override
+	public Map<String, Object> lookupAll(Collection<String> paths) {
+		BeanDirectory directory = await();
+		if (directory == null) {
+			Map<String, Object> results = new LinkedHashMap<String, Object>();
+			for (String path : paths) {
+				results.put(path, null);
+			}
+			return results;
+		}
+		return BulkBeanDirectory.lookupEach(directory, paths);
+	}
+	
+	@Override
+	public <T> Map<String, T> lookupAll(Collection<String> paths, 
+			Class<T> required) throws ArooaConversionException {
+		BeanDirectory directory = await();
+		if (directory == null) {
+			Map<String, T> results = new LinkedHashMap<String, T>();
+			for (String path : paths) {
+				results.put(path, null);
+			}
+			return results;
+		}
+		return BulkBeanDirectory.lookupEach(directory, paths, required);
+	}
+}
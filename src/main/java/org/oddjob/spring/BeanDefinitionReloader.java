@@ -0,0 +1,358 @@
+package org.oddjob.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.ResourceEntityResolver;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.core.io.Resource;
+
+/**
+ * Changes the bean definitions of a running application context and
+ * recreates only the singletons affected, rather than closing the
+ * context and loading it again.
+ * <p>
+ * When a definition is replaced or removed Spring destroys the singleton
+ * and every singleton that depends on it. Those that were destroyed are
+ * then created again from the new definitions, along with any new eager
+ * singletons.
+ * <p>
+ * Definitions can't be changed this way if the context contains bean
+ * factory post processors defined as beans, because these have already
+ * been applied to the definitions, or if the definition of a bean post
+ * processor changes. In these cases, or if a definition of the same name
+ * comes from another resource, {@link #reload(Resource)} returns false
+ * and the context should be loaded again instead.
+ *
+ * @see SpringService#setWatch(boolean)
+ */
+public class BeanDefinitionReloader {
+
+	private static final Logger logger = LoggerFactory.getLogger(
+			BeanDefinitionReloader.class);
+
+	/** The running context. */
+	private final AbstractApplicationContext applicationContext;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param applicationContext The running context.
+	 */
+	public BeanDefinitionReloader(AbstractApplicationContext applicationContext) {
+		this.applicationContext = applicationContext;
+	}
+
+	/**
+	 * Parse a changed XML resource again and redefine the beans whose
+	 * definitions differ from those currently in the context.
+	 *
+	 * @param resource The changed resource.
+	 *
+	 * @return true if the definitions were reloaded, false if the context
+	 * needs to be loaded again instead.
+	 */
+	public boolean reload(Resource resource) {
+
+		DefaultListableBeanFactory live = beanFactory();
+		if (live.getBeanNamesForType(
+				BeanFactoryPostProcessor.class, true, false).length > 0) {
+			logger.info("Context has bean factory post processor beans, " +
+					"can't reload " + resource.getDescription());
+			return false;
+		}
+
+		DefaultListableBeanFactory parsed = parse(resource);
+
+		for (BeanFactoryPostProcessor postProcessor :
+				applicationContext.getBeanFactoryPostProcessors()) {
+			postProcessor.postProcessBeanFactory(parsed);
+		}
+
+		String description = resource.getDescription();
+
+		Set<String> removed = new LinkedHashSet<String>();
+		for (String name : live.getBeanDefinitionNames()) {
+			if (description.equals(
+					live.getBeanDefinition(name).getResourceDescription())
+					&& !parsed.containsBeanDefinition(name)) {
+				removed.add(name);
+			}
+		}
+
+		Map<String, BeanDefinition> changed =
+				new LinkedHashMap<String, BeanDefinition>();
+		for (String name : parsed.getBeanDefinitionNames()) {
+			BeanDefinition definition = parsed.getBeanDefinition(name);
+			if (live.containsBeanDefinition(name)) {
+				BeanDefinition existing = live.getBeanDefinition(name);
+				if (!description.equals(existing.getResourceDescription())) {
+					logger.info("Bean [" + name + "] is also defined in " +
+							existing.getResourceDescription() +
+							", can't reload " + description);
+					return false;
+				}
+				if (existing.equals(definition)) {
+					continue;
+				}
+			}
+			changed.put(name, definition);
+		}
+
+		Set<String> postProcessors = new LinkedHashSet<String>();
+		postProcessors.addAll(Arrays.asList(live.getBeanNamesForType(
+				BeanPostProcessor.class, true, false)));
+		postProcessors.addAll(Arrays.asList(parsed.getBeanNamesForType(
+				BeanPostProcessor.class, true, false)));
+		postProcessors.addAll(Arrays.asList(parsed.getBeanNamesForType(
+				BeanFactoryPostProcessor.class, true, false)));
+		for (String name : postProcessors) {
+			if (changed.containsKey(name) || removed.contains(name)) {
+				logger.info("Post processor [" + name + "] has changed, " +
+						"can't reload " + description);
+				return false;
+			}
+		}
+
+		if (changed.isEmpty() && removed.isEmpty()) {
+			logger.debug("No bean definitions changed in " + description);
+			return true;
+		}
+
+		logger.info("Reloading " + description + ", changed " +
+				changed.keySet() + ", removed " + removed);
+
+		redefine(changed, removed);
+
+		for (String name : changed.keySet()) {
+			for (String alias : parsed.getAliases(name)) {
+				if (!live.isAlias(alias)) {
+					live.registerAlias(name, alias);
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Replace and remove bean definitions and recreate the singletons
+	 * this destroys. If a singleton fails to be created the definitions
+	 * are put back as they were, and the singletons destroyed are created
+	 * again from these, before the failure is thrown.
+	 *
+	 * @param definitions New definitions by bean name. These replace any
+	 * existing definitions of the same name.
+	 * @param removed The names of definitions to remove.
+	 *
+	 * @return The names of the singletons that were created.
+	 */
+	public Set<String> redefine(Map<String, ? extends BeanDefinition> definitions,
+			Collection<String> removed) {
+
+		DefaultListableBeanFactory live = beanFactory();
+
+		Set<String> before = new LinkedHashSet<String>(
+				Arrays.asList(live.getSingletonNames()));
+
+		Map<String, BeanDefinition> previous =
+				new LinkedHashMap<String, BeanDefinition>();
+		Map<String, String[]> aliases = new LinkedHashMap<String, String[]>();
+		for (String name : removed) {
+			previous.put(name, live.getBeanDefinition(name));
+			aliases.put(name, live.getAliases(name));
+		}
+		for (String name : definitions.keySet()) {
+			if (live.containsBeanDefinition(name)) {
+				previous.put(name, live.getBeanDefinition(name));
+			}
+		}
+
+		for (String name : removed) {
+			for (String alias : aliases.get(name)) {
+				live.removeAlias(alias);
+			}
+			live.removeBeanDefinition(name);
+		}
+		register(definitions);
+
+		Set<String> created;
+		try {
+			created = create(before, definitions.keySet());
+		}
+		catch (RuntimeException e) {
+			logger.error("Failed creating singletons, restoring " +
+					previous.keySet(), e);
+			for (String name : definitions.keySet()) {
+				if (!previous.containsKey(name)) {
+					live.removeBeanDefinition(name);
+				}
+			}
+			register(previous);
+			for (Map.Entry<String, String[]> entry : aliases.entrySet()) {
+				for (String alias : entry.getValue()) {
+					live.registerAlias(entry.getKey(), alias);
+				}
+			}
+			try {
+				create(before, Collections.<String>emptySet());
+			}
+			catch (RuntimeException e2) {
+				e.addSuppressed(e2);
+			}
+			throw e;
+		}
+
+		forgetBindings(removed);
+
+		logger.debug("Recreated singletons " + created);
+
+		return created;
+	}
+
+	/**
+	 * Register definitions, replacing any of the same name.
+	 *
+	 * @param definitions Definitions by bean name.
+	 */
+	protected void register(Map<String, ? extends BeanDefinition> definitions) {
+
+		DefaultListableBeanFactory live = beanFactory();
+
+		for (Map.Entry<String, ? extends BeanDefinition> entry :
+				definitions.entrySet()) {
+			if (live.containsBeanDefinition(entry.getKey())) {
+				live.removeBeanDefinition(entry.getKey());
+			}
+			live.registerBeanDefinition(entry.getKey(), entry.getValue());
+		}
+
+		// Registering resets the cache of definition names.
+		live.freezeConfiguration();
+		
+		BeanLookupCache.clear(applicationContext);
+	}
+
+	/**
+	 * Create the singletons that have been destroyed, and those of new 
+	 * definitions that aren't lazy.
+	 *
+	 * @param before The names of the singletons before definitions were
+	 * changed.
+	 * @param redefined The names of the new definitions.
+	 *
+	 * @return The names of the singletons that were created.
+	 */
+	protected Set<String> create(Set<String> before, Set<String> redefined) {
+
+		DefaultListableBeanFactory live = beanFactory();
+
+		Set<String> recreate = new LinkedHashSet<String>();
+		for (String name : before) {
+			if (!live.containsSingleton(name) &&
+					live.containsBeanDefinition(name)) {
+				recreate.add(name);
+			}
+		}
+		for (String name : redefined) {
+			if (!live.containsSingleton(name) &&
+					!live.getMergedBeanDefinition(name).isLazyInit()) {
+				recreate.add(name);
+			}
+		}
+
+		List<String> created = new ArrayList<String>();
+		for (String name : recreate) {
+			BeanDefinition definition = live.getMergedBeanDefinition(name);
+			if (definition.isAbstract() || !definition.isSingleton()) {
+				continue;
+			}
+			if (live.isFactoryBean(name)) {
+				live.getBean(BeanFactory.FACTORY_BEAN_PREFIX + name);
+			}
+			else {
+				live.getBean(name);
+			}
+			created.add(name);
+		}
+
+		for (String name : created) {
+			Object singleton = live.getSingleton(name);
+			if (singleton instanceof SmartInitializingSingleton) {
+				((SmartInitializingSingleton) singleton)
+						.afterSingletonsInstantiated();
+			}
+		}
+
+		return new LinkedHashSet<String>(created);
+	}
+
+	/**
+	 * Forget the expressions removed definitions used, so that
+	 * {@link SpringService#rebind()} doesn't bring them back.
+	 *
+	 * @param removed The names of the removed definitions.
+	 */
+	protected void forgetBindings(Collection<String> removed) {
+		for (BeanFactoryPostProcessor postProcessor :
+				applicationContext.getBeanFactoryPostProcessors()) {
+			if (!(postProcessor instanceof OddjobPropertyConfigurer)) {
+				continue;
+			}
+			PropertyBindings bindings =
+					((OddjobPropertyConfigurer) postProcessor).getBindings();
+			if (bindings == null) {
+				continue;
+			}
+			for (String name : removed) {
+				bindings.forget(name);
+			}
+		}
+	}
+
+	/**
+	 * Parse a resource into a registry of its own.
+	 *
+	 * @param resource The resource.
+	 *
+	 * @return The registry.
+	 */
+	protected DefaultListableBeanFactory parse(Resource resource) {
+
+		DefaultListableBeanFactory registry = new DefaultListableBeanFactory();
+
+		XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(registry);
+		reader.setEnvironment(applicationContext.getEnvironment());
+		reader.setResourceLoader(applicationContext);
+		reader.setEntityResolver(new ResourceEntityResolver(applicationContext));
+
+		reader.loadBeanDefinitions(resource);
+
+		return registry;
+	}
+
+	/**
+	 * Provide the bean factory of the context.
+	 *
+	 * @return The bean factory.
+	 */
+	protected DefaultListableBeanFactory beanFactory() {
+		return (DefaultListableBeanFactory) applicationContext.getBeanFactory();
+	}
+}
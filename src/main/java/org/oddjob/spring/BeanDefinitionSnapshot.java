@@ -0,0 +1,745 @@
+package org.oddjob.spring;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.ManagedArray;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedProperties;
+import org.springframework.beans.factory.support.ManagedSet;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+
+/**
+ * A compact binary snapshot of the bean definitions parsed from a set of
+ * Spring XML configuration resources. Loading definitions from a snapshot
+ * avoids the DOM parsing and schema validation of the XML which can be
+ * significant for configurations with many definitions.
+ * <p>
+ * The snapshot records a hash of the content of all the source resources.
+ * If any source changes the hash will no longer match and the snapshot is
+ * deleted so that the XML is parsed again. Which <code>beans</code> 
+ * elements are parsed depends on the active and default profiles, so 
+ * these are part of the hash, and of the file name, too.
+ * <p>
+ * Only definitions made up of the values the XML bean parser creates
+ * (strings, references, inner beans and managed collections) can be
+ * saved. If any definition has something else, such as the metadata
+ * of a component scan, or was read from a resource that isn't one of the
+ * sources (i.e. was imported) no snapshot is written and the XML will
+ * continue to be parsed each time.
+ *
+ * @see SpringBase#setSnapshotDir(File)
+ */
+public class BeanDefinitionSnapshot {
+
+	private static final Logger logger = LoggerFactory.getLogger(
+			BeanDefinitionSnapshot.class);
+
+	private static final int MAGIC = 0x4F4A5344;
+
+	private static final int VERSION = 1;
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int TYPED_STRING = 2;
+	private static final int BEAN_REFERENCE = 3;
+	private static final int BEAN_NAME_REFERENCE = 4;
+	private static final int LIST = 5;
+	private static final int SET = 6;
+	private static final int MAP = 7;
+	private static final int PROPERTIES = 8;
+	private static final int INNER_BEAN = 9;
+	private static final int ARRAY = 10;
+
+	/** The snapshot file. */
+	private final File file;
+
+	/** The resources the definitions come from. */
+	private final List<Resource> sources;
+
+	/** The profiles the sources are parsed with. */
+	private final List<String> profiles;
+
+	/** Hash of the content of the sources. Calculated on first use. */
+	private String contentHash;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file The file to read and write the snapshot to.
+	 * @param sources The resources the definitions are parsed from.
+	 */
+	public BeanDefinitionSnapshot(File file, List<Resource> sources) {
+		this(file, sources, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Constructor for a snapshot of sources parsed with profiles.
+	 *
+	 * @param file The file to read and write the snapshot to.
+	 * @param sources The resources the definitions are parsed from.
+	 * @param profiles The profiles, from {@link #profiles(Environment)}.
+	 */
+	public BeanDefinitionSnapshot(File file, List<Resource> sources,
+			List<String> profiles) {
+		this.file = file;
+		this.sources = sources;
+		this.profiles = profiles;
+	}
+
+	/**
+	 * Create a file name for a snapshot of the given configuration
+	 * locations.
+	 *
+	 * @param locations The locations as given to the Spring component.
+	 *
+	 * @return A file name. Never null.
+	 */
+	public static String fileNameFor(List<String> locations) {
+		return fileNameFor(locations, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Create a file name for a snapshot of the given configuration
+	 * locations parsed with the given profiles.
+	 *
+	 * @param locations The locations as given to the Spring component.
+	 * @param profiles The profiles, from {@link #profiles(Environment)}.
+	 *
+	 * @return A file name. Never null.
+	 */
+	public static String fileNameFor(List<String> locations,
+			List<String> profiles) {
+		MessageDigest digest = sha256();
+		for (String location : locations) {
+			digest.update(location.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		for (String profile : profiles) {
+			digest.update(profile.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		return "spring-" + hex(digest.digest()).substring(0, 16) + ".bds";
+	}
+
+	/**
+	 * Provide the active and default profiles of an environment, which 
+	 * decide which <code>beans</code> elements are parsed. The order
+	 * the profiles are given in makes no difference so they are sorted.
+	 *
+	 * @param environment The environment.
+	 *
+	 * @return The profiles, each prefixed with whether it is active or
+	 * default. Never null.
+	 */
+	public static List<String> profiles(Environment environment) {
+		List<String> active = new ArrayList<String>();
+		for (String profile : environment.getActiveProfiles()) {
+			active.add("active:" + profile);
+		}
+		Collections.sort(active);
+		List<String> defaults = new ArrayList<String>();
+		for (String profile : environment.getDefaultProfiles()) {
+			defaults.add("default:" + profile);
+		}
+		Collections.sort(defaults);
+		active.addAll(defaults);
+		return active;
+	}
+
+	/**
+	 * Load the definitions from the snapshot if the snapshot exists and
+	 * was taken from the current content of the sources. A stale or
+	 * unreadable snapshot is deleted.
+	 *
+	 * @param registry The registry to load the definitions into.
+	 *
+	 * @return true if the definitions were loaded, false if the sources
+	 * need to be parsed.
+	 */
+	public boolean load(BeanDefinitionRegistry registry) {
+		if (!file.exists()) {
+			return false;
+		}
+
+		Map<String, BeanDefinition> definitions =
+				new LinkedHashMap<String, BeanDefinition>();
+		Map<String, String> aliases = new LinkedHashMap<String, String>();
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				logger.info("Snapshot " + file + " is not of a known format.");
+				delete();
+				return false;
+			}
+			if (!contentHash().equals(readString(in))) {
+				logger.info("Sources have changed since snapshot " + file +
+						" was taken.");
+				delete();
+				return false;
+			}
+
+			for (int i = in.readInt(); i > 0; --i) {
+				String name = readString(in);
+				definitions.put(name, readDefinition(in));
+			}
+			for (int i = in.readInt(); i > 0; --i) {
+				String alias = readString(in);
+				aliases.put(alias, readString(in));
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			logger.warn("Failed reading snapshot " + file + ", discarding it.", e);
+			delete();
+			return false;
+		}
+
+		for (Map.Entry<String, BeanDefinition> entry : definitions.entrySet()) {
+			registry.registerBeanDefinition(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, String> entry : aliases.entrySet()) {
+			registry.registerAlias(entry.getValue(), entry.getKey());
+		}
+
+		logger.info("Loaded " + definitions.size() +
+				" bean definitions from snapshot " + file);
+
+		return true;
+	}
+
+	/**
+	 * Save the definitions in the registry as a snapshot. This should be
+	 * called after the sources have been parsed into the registry but
+	 * before the registry is refreshed and post processors have changed
+	 * the definitions.
+	 *
+	 * @param registry The registry to take the definitions from.
+	 *
+	 * @return true if the snapshot was written, false if the definitions
+	 * couldn't be captured.
+	 */
+	public boolean save(BeanDefinitionRegistry registry) {
+
+		Set<String> descriptions = new HashSet<String>();
+		for (Resource source : sources) {
+			descriptions.add(source.getDescription());
+		}
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		File temp = null;
+		try {
+			parent.mkdirs();
+			temp = File.createTempFile(file.getName(), ".tmp", parent);
+
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)))) {
+
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, contentHash());
+
+				String[] names = registry.getBeanDefinitionNames();
+				List<String[]> aliases = new ArrayList<String[]>();
+
+				out.writeInt(names.length);
+				for (String name : names) {
+					BeanDefinition definition = registry.getBeanDefinition(name);
+					String resourceDescription =
+							definition.getResourceDescription();
+					if (resourceDescription != null &&
+							!descriptions.contains(resourceDescription)) {
+						throw new UnsupportedDefinitionException(
+								"it was read from " + resourceDescription);
+					}
+					writeString(out, name);
+					writeDefinition(out, name, definition);
+
+					for (String alias : registry.getAliases(name)) {
+						aliases.add(new String[] { alias, name });
+					}
+				}
+
+				out.writeInt(aliases.size());
+				for (String[] alias : aliases) {
+					writeString(out, alias[0]);
+					writeString(out, alias[1]);
+				}
+			}
+
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			temp = null;
+
+			logger.info("Saved snapshot of bean definitions to " + file);
+			return true;
+		}
+		catch (UnsupportedDefinitionException e) {
+			logger.info("Not saving a snapshot because " + e.getMessage());
+			return false;
+		}
+		catch (IOException e) {
+			logger.warn("Failed saving snapshot " + file, e);
+			return false;
+		}
+		finally {
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Delete the snapshot file.
+	 */
+	public void delete() {
+		if (file.exists() && !file.delete()) {
+			logger.warn("Failed to delete snapshot " + file);
+		}
+	}
+
+	/**
+	 * Provide the hash of the content of the sources.
+	 *
+	 * @return Hex string of the hash.
+	 *
+	 * @throws IOException If a source can't be read.
+	 */
+	protected String contentHash() throws IOException {
+		if (contentHash == null) {
+			MessageDigest digest = sha256();
+			byte[] buffer = new byte[8192];
+			for (Resource source : sources) {
+				digest.update(source.getDescription().getBytes(
+						StandardCharsets.UTF_8));
+				try (InputStream in = source.getInputStream()) {
+					for (int count = in.read(buffer); count >= 0;
+							count = in.read(buffer)) {
+						digest.update(buffer, 0, count);
+					}
+				}
+			}
+			for (String profile : profiles) {
+				digest.update((byte) 0);
+				digest.update(profile.getBytes(StandardCharsets.UTF_8));
+			}
+			contentHash = hex(digest.digest());
+		}
+		return contentHash;
+	}
+
+	void writeDefinition(DataOutputStream out, String name,
+			BeanDefinition definition) throws IOException {
+
+		if (!(definition instanceof AbstractBeanDefinition)) {
+			throw new UnsupportedDefinitionException(name + " is a " +
+					definition.getClass().getName());
+		}
+		if (definition instanceof AnnotatedBeanDefinition) {
+			throw new UnsupportedDefinitionException(name +
+					" has annotation metadata");
+		}
+
+		AbstractBeanDefinition bd = (AbstractBeanDefinition) definition;
+
+		if (bd.hasMethodOverrides() || !bd.getQualifiers().isEmpty() ||
+				bd.attributeNames().length > 0 ||
+				bd.getInstanceSupplier() != null) {
+			throw new UnsupportedDefinitionException(name +
+					" has method overrides, qualifiers, attributes or an instance supplier");
+		}
+
+		writeString(out, bd.getBeanClassName());
+		writeString(out, bd.getParentName());
+		writeString(out, bd.getScope());
+		out.writeBoolean(bd.isAbstract());
+		Boolean lazyInit = bd.getLazyInit();
+		out.writeByte(lazyInit == null ? -1 : (lazyInit ? 1 : 0));
+		out.writeInt(bd.getAutowireMode());
+		out.writeInt(bd.getDependencyCheck());
+		writeStrings(out, bd.getDependsOn());
+		out.writeBoolean(bd.isAutowireCandidate());
+		out.writeBoolean(bd.isPrimary());
+		out.writeBoolean(bd.isNonPublicAccessAllowed());
+		out.writeBoolean(bd.isLenientConstructorResolution());
+		writeString(out, bd.getFactoryBeanName());
+		writeString(out, bd.getFactoryMethodName());
+		writeString(out, bd.getInitMethodName());
+		out.writeBoolean(bd.isEnforceInitMethod());
+		writeString(out, bd.getDestroyMethodName());
+		out.writeBoolean(bd.isEnforceDestroyMethod());
+		out.writeBoolean(bd.isSynthetic());
+		out.writeInt(bd.getRole());
+		writeString(out, bd.getDescription());
+		writeString(out, bd.getResourceDescription());
+
+		ConstructorArgumentValues args = bd.getConstructorArgumentValues();
+		Map<Integer, ValueHolder> indexed = args.getIndexedArgumentValues();
+		out.writeInt(indexed.size());
+		for (Map.Entry<Integer, ValueHolder> entry : indexed.entrySet()) {
+			out.writeInt(entry.getKey());
+			writeValueHolder(out, entry.getValue());
+		}
+		List<ValueHolder> generic = args.getGenericArgumentValues();
+		out.writeInt(generic.size());
+		for (ValueHolder holder : generic) {
+			writeValueHolder(out, holder);
+		}
+
+		PropertyValue[] propertyValues =
+				bd.getPropertyValues().getPropertyValues();
+		out.writeInt(propertyValues.length);
+		for (PropertyValue pv : propertyValues) {
+			writeString(out, pv.getName());
+			writeValue(out, pv.getValue());
+		}
+	}
+
+	BeanDefinition readDefinition(DataInputStream in) throws IOException {
+
+		GenericBeanDefinition bd = new GenericBeanDefinition();
+
+		bd.setBeanClassName(readString(in));
+		bd.setParentName(readString(in));
+		bd.setScope(readString(in));
+		bd.setAbstract(in.readBoolean());
+		byte lazyInit = in.readByte();
+		if (lazyInit >= 0) {
+			bd.setLazyInit(lazyInit == 1);
+		}
+		bd.setAutowireMode(in.readInt());
+		bd.setDependencyCheck(in.readInt());
+		bd.setDependsOn(readStrings(in));
+		bd.setAutowireCandidate(in.readBoolean());
+		bd.setPrimary(in.readBoolean());
+		bd.setNonPublicAccessAllowed(in.readBoolean());
+		bd.setLenientConstructorResolution(in.readBoolean());
+		bd.setFactoryBeanName(readString(in));
+		bd.setFactoryMethodName(readString(in));
+		bd.setInitMethodName(readString(in));
+		bd.setEnforceInitMethod(in.readBoolean());
+		bd.setDestroyMethodName(readString(in));
+		bd.setEnforceDestroyMethod(in.readBoolean());
+		bd.setSynthetic(in.readBoolean());
+		bd.setRole(in.readInt());
+		bd.setDescription(readString(in));
+		bd.setResourceDescription(readString(in));
+
+		ConstructorArgumentValues args = new ConstructorArgumentValues();
+		for (int i = in.readInt(); i > 0; --i) {
+			int index = in.readInt();
+			args.addIndexedArgumentValue(index, readValueHolder(in));
+		}
+		for (int i = in.readInt(); i > 0; --i) {
+			args.addGenericArgumentValue(readValueHolder(in));
+		}
+		bd.setConstructorArgumentValues(args);
+
+		MutablePropertyValues propertyValues = new MutablePropertyValues();
+		for (int i = in.readInt(); i > 0; --i) {
+			String name = readString(in);
+			propertyValues.addPropertyValue(name, readValue(in));
+		}
+		bd.setPropertyValues(propertyValues);
+
+		return bd;
+	}
+
+	void writeValueHolder(DataOutputStream out, ValueHolder holder)
+	throws IOException {
+		writeValue(out, holder.getValue());
+		writeString(out, holder.getType());
+		writeString(out, holder.getName());
+	}
+
+	ValueHolder readValueHolder(DataInputStream in) throws IOException {
+		Object value = readValue(in);
+		String type = readString(in);
+		String name = readString(in);
+		return new ValueHolder(value, type, name);
+	}
+
+	void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		}
+		else if (value instanceof TypedStringValue) {
+			TypedStringValue typed = (TypedStringValue) value;
+			out.writeByte(TYPED_STRING);
+			writeString(out, typed.getValue());
+			writeString(out, typed.getTargetTypeName());
+		}
+		else if (value instanceof RuntimeBeanReference) {
+			RuntimeBeanReference reference = (RuntimeBeanReference) value;
+			out.writeByte(BEAN_REFERENCE);
+			writeString(out, reference.getBeanName());
+			out.writeBoolean(reference.isToParent());
+		}
+		else if (value instanceof RuntimeBeanNameReference) {
+			out.writeByte(BEAN_NAME_REFERENCE);
+			writeString(out, ((RuntimeBeanNameReference) value).getBeanName());
+		}
+		else if (value instanceof ManagedArray) {
+			ManagedArray array = (ManagedArray) value;
+			out.writeByte(ARRAY);
+			writeString(out, array.getElementTypeName());
+			out.writeBoolean(array.isMergeEnabled());
+			writeElements(out, array);
+		}
+		else if (value instanceof ManagedList) {
+			ManagedList<?> list = (ManagedList<?>) value;
+			out.writeByte(LIST);
+			writeString(out, list.getElementTypeName());
+			out.writeBoolean(list.isMergeEnabled());
+			writeElements(out, list);
+		}
+		else if (value instanceof ManagedSet) {
+			ManagedSet<?> set = (ManagedSet<?>) value;
+			out.writeByte(SET);
+			writeString(out, set.getElementTypeName());
+			out.writeBoolean(set.isMergeEnabled());
+			writeElements(out, set);
+		}
+		else if (value instanceof ManagedMap) {
+			ManagedMap<?, ?> map = (ManagedMap<?, ?>) value;
+			out.writeByte(MAP);
+			writeString(out, map.getKeyTypeName());
+			writeString(out, map.getValueTypeName());
+			out.writeBoolean(map.isMergeEnabled());
+			writeEntries(out, map);
+		}
+		else if (value instanceof ManagedProperties) {
+			ManagedProperties properties = (ManagedProperties) value;
+			out.writeByte(PROPERTIES);
+			out.writeBoolean(properties.isMergeEnabled());
+			writeEntries(out, properties);
+		}
+		else if (value instanceof BeanDefinitionHolder) {
+			BeanDefinitionHolder holder = (BeanDefinitionHolder) value;
+			out.writeByte(INNER_BEAN);
+			writeString(out, holder.getBeanName());
+			writeStrings(out, holder.getAliases());
+			writeDefinition(out, holder.getBeanName(),
+					holder.getBeanDefinition());
+		}
+		else {
+			throw new UnsupportedDefinitionException("a value is a " +
+					value.getClass().getName());
+		}
+	}
+
+	Object readValue(DataInputStream in) throws IOException {
+		int type = in.readByte();
+		switch (type) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(in);
+		case TYPED_STRING: {
+			TypedStringValue typed = new TypedStringValue(readString(in));
+			typed.setTargetTypeName(readString(in));
+			return typed;
+		}
+		case BEAN_REFERENCE: {
+			String beanName = readString(in);
+			return new RuntimeBeanReference(beanName, in.readBoolean());
+		}
+		case BEAN_NAME_REFERENCE:
+			return new RuntimeBeanNameReference(readString(in));
+		case ARRAY: {
+			String elementTypeName = readString(in);
+			boolean merge = in.readBoolean();
+			int size = in.readInt();
+			ManagedArray array = new ManagedArray(elementTypeName, size);
+			array.setMergeEnabled(merge);
+			readElements(in, array, size);
+			return array;
+		}
+		case LIST: {
+			ManagedList<Object> list = new ManagedList<Object>();
+			list.setElementTypeName(readString(in));
+			list.setMergeEnabled(in.readBoolean());
+			int size = in.readInt();
+			readElements(in, list, size);
+			return list;
+		}
+		case SET: {
+			ManagedSet<Object> set = new ManagedSet<Object>();
+			set.setElementTypeName(readString(in));
+			set.setMergeEnabled(in.readBoolean());
+			int size = in.readInt();
+			readElements(in, set, size);
+			return set;
+		}
+		case MAP: {
+			ManagedMap<Object, Object> map = new ManagedMap<Object, Object>();
+			map.setKeyTypeName(readString(in));
+			map.setValueTypeName(readString(in));
+			map.setMergeEnabled(in.readBoolean());
+			for (int i = in.readInt(); i > 0; --i) {
+				Object key = readValue(in);
+				map.put(key, readValue(in));
+			}
+			return map;
+		}
+		case PROPERTIES: {
+			ManagedProperties properties = new ManagedProperties();
+			properties.setMergeEnabled(in.readBoolean());
+			for (int i = in.readInt(); i > 0; --i) {
+				Object key = readValue(in);
+				properties.put(key, readValue(in));
+			}
+			return properties;
+		}
+		case INNER_BEAN: {
+			String beanName = readString(in);
+			String[] aliases = readStrings(in);
+			BeanDefinition definition = readDefinition(in);
+			return new BeanDefinitionHolder(definition, beanName, aliases);
+		}
+		default:
+			throw new IOException("Unknown value type " + type);
+		}
+	}
+
+	void writeElements(DataOutputStream out, Collection<?> elements)
+	throws IOException {
+		out.writeInt(elements.size());
+		for (Object element : elements) {
+			writeValue(out, element);
+		}
+	}
+
+	void readElements(DataInputStream in, Collection<Object> elements,
+			int size) throws IOException {
+		for (int i = 0; i < size; ++i) {
+			elements.add(readValue(in));
+		}
+	}
+
+	void writeEntries(DataOutputStream out, Map<?, ?> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			writeValue(out, entry.getKey());
+			writeValue(out, entry.getValue());
+		}
+	}
+
+	static void writeString(DataOutputStream out, String string)
+	throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeStrings(DataOutputStream out, String[] strings)
+	throws IOException {
+		if (strings == null) {
+			out.writeInt(-1);
+		}
+		else {
+			out.writeInt(strings.length);
+			for (String string : strings) {
+				writeString(out, string);
+			}
+		}
+	}
+
+	static String[] readStrings(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		String[] strings = new String[length];
+		for (int i = 0; i < length; ++i) {
+			strings[i] = readString(in);
+		}
+		return strings;
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+			builder.append(Character.forDigit(b & 0xF, 16));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Thrown when a definition can't be captured in a snapshot.
+	 */
+	static class UnsupportedDefinitionException extends IOException {
+		private static final long serialVersionUID = 2021020100L;
+
+		UnsupportedDefinitionException(String message) {
+			super(message);
+		}
+	}
+}
@@ -1,15 +1,23 @@
 package org.oddjob.spring;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.LongSupplier;
 
 import org.oddjob.arooa.ArooaSession;
 import org.oddjob.arooa.convert.ArooaConversionException;
-import org.oddjob.arooa.convert.ArooaConverter;
-import org.oddjob.arooa.reflect.PropertyAccessor;
 import org.oddjob.arooa.registry.BeanDirectory;
 import org.oddjob.arooa.registry.BeanDirectoryOwner;
 import org.oddjob.arooa.registry.PathBreakdown;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 
 /**
  * Adapts a Spring Application Context to be an Oddjob 
@@ -18,13 +26,29 @@ import org.springframework.context.ApplicationContext;
  * This allows Oddjob components to access beans and properties within
  * Spring using the convention ${oddjob-spring-component/spring-bean}
  * to access a bean in spring.
+ * <p>
+ * Parsed paths, singleton beans and the directories of nested Spring
+ * components are cached in a {@link BeanLookupCache} shared by all 
+ * adaptors for the same application context. Properties are read with
+ * {@link CompiledPropertyGetters} and typed lookups are converted with a
+ * {@link CachingConverter}.
+ * <p>
+ * Many paths can be looked up at once with {@link #lookupAll(Collection)},
+ * which finds each bean, and the directory of each nested component, only
+ * once however many of the paths use it.
+ * <p>
+ * The Spring components publish one adaptor for each application context
+ * they load, with a generation number. Once the component is stopped or 
+ * reset, or loads another context, the generation moves on and the 
+ * adaptor throws an {@link IllegalStateException} rather than provide 
+ * beans from a context that is no longer current.
  * 
  * @see  SpringBeans
  * 
  * @author rob
  *
  */
-public class BeanDirectoryAdaptor implements BeanDirectory {
+public class BeanDirectoryAdaptor implements BulkBeanDirectory {
 	
 	/** The Spring Application Context. */
 	private final ApplicationContext applicationContext;
@@ -32,14 +56,45 @@ public class BeanDirectoryAdaptor implements BeanDirectory {
 	/** The session. needed for the property accessor. */
 	private final ArooaSession session;
 	
+	/** Cache of lookups for the context. */
+	private final BeanLookupCache cache;
+	
+	/** Reads properties. */
+	private final CompiledPropertyGetters getters;
+	
+	/** The generation this adaptor was published as. */
+	private final long generation;
+	
+	/** Provides the current generation. Null if the adaptor never goes
+	 * stale. */
+	private final LongSupplier currentGeneration;
+	
 	/**
-	 * Constructor.
+	 * Constructor for an adaptor that is current for as long as the 
+	 * application context is.
 	 * 
 	 * @param applicationContext The Spring Application Context.
 	 * @param session The Oddjob Arooa Session.
 	 */
 	public BeanDirectoryAdaptor(ApplicationContext applicationContext,
 			ArooaSession session) {
+		this(applicationContext, session, 0L, null);
+	}
+	
+	/**
+	 * Constructor for an adaptor that is only current while the given 
+	 * generation is.
+	 * 
+	 * @param applicationContext The Spring Application Context.
+	 * @param session The Oddjob Arooa Session.
+	 * @param generation The generation of this adaptor.
+	 * @param currentGeneration Provides the current generation.
+	 * 
+	 * @see BeanDirectoryPublisher
+	 */
+	public BeanDirectoryAdaptor(ApplicationContext applicationContext,
+			ArooaSession session, long generation, 
+			LongSupplier currentGeneration) {
 		if (applicationContext == null) {
 			throw new NullPointerException("No ApplicationContext.");
 		}
@@ -49,26 +104,164 @@ public class BeanDirectoryAdaptor implements BeanDirectory {
 		
 		this.applicationContext = applicationContext;
 		this.session = session;
+		this.cache = BeanLookupCache.forContext(applicationContext);
+		this.getters = new CompiledPropertyGetters(
+				session.getTools().getPropertyAccessor());
+		this.generation = generation;
+		this.currentGeneration = currentGeneration;
+	}
+	
+	/**
+	 * Getter for the generation.
+	 * 
+	 * @return The generation this adaptor was published as.
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Is this adaptor's generation still the current one.
+	 * 
+	 * @return true if current.
+	 */
+	public boolean isCurrent() {
+		return currentGeneration == null || 
+				currentGeneration.getAsLong() == generation;
+	}
+	
+	/**
+	 * Fail if this adaptor is no longer current.
+	 * 
+	 * @throws IllegalStateException If it isn't.
+	 */
+	protected void checkCurrent() throws IllegalStateException {
+		if (!isCurrent()) {
+			throw new IllegalStateException("Beans of generation " + 
+					generation + " are no longer available, the current " + 
+					"generation is " + currentGeneration.getAsLong() + ".");
+		}
 	}
 	
+	/**
+	 * Is the adaptor current and the application context still active. 
+	 * Contexts that can't be closed are always active.
+	 * 
+	 * @return true if active.
+	 */
+	boolean isActive() {
+		if (!isCurrent()) {
+			return false;
+		}
+		if (applicationContext instanceof ConfigurableApplicationContext) {
+			return ((ConfigurableApplicationContext) 
+					applicationContext).isActive();
+		}
+		return true;
+	}
+	
+	/**
+	 * Provide the name of a singleton bean. Names can only be found for 
+	 * application contexts loaded by the Spring components, which use an 
+	 * {@link OddjobListableBeanFactory}.
+	 * 
+	 * @return The bean name or null if the bean isn't a singleton in the
+	 * context.
+	 */
 	public String getIdFor(Object bean) {
+		checkCurrent();
+		if (bean == null || !isActive() || !(applicationContext 
+				instanceof ConfigurableApplicationContext)) {
+			return null;
+		}
+		ConfigurableListableBeanFactory beanFactory = 
+				((ConfigurableApplicationContext) applicationContext)
+				.getBeanFactory();
+		if (beanFactory instanceof OddjobListableBeanFactory) {
+			return ((OddjobListableBeanFactory) beanFactory)
+					.getBeanNameFor(bean);
+		}
 		return null;
 	}
 
-	public <T> Iterable<T> getAllByType(Class<T> type) {
-		Map<?, T> map = applicationContext.getBeansOfType(type);
-		return map.values();
+	/**
+	 * Provide the beans of the given type. The names of the beans are 
+	 * only found once for each type and the beans are only got from the
+	 * context as they are iterated over.
+	 * 
+	 * @see BeanLookupCache#namesForType(Class)
+	 */
+	public <T> Iterable<T> getAllByType(final Class<T> type) {
+		checkCurrent();
+		final String[] names = cache.namesForType(type);
+		return new Iterable<T>() {
+			@Override
+			public Iterator<T> iterator() {
+				return new BeanIterator<T>(names, type);
+			}
+		};
+	}
+	
+	/**
+	 * Iterates over the beans of the given names, skipping any that
+	 * no longer exist.
+	 */
+	class BeanIterator<T> implements Iterator<T> {
+		
+		private final String[] names;
+		
+		private final Class<T> type;
+		
+		private int index;
+		
+		private T next;
+		
+		BeanIterator(String[] names, Class<T> type) {
+			this.names = names;
+			this.type = type;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			while (next == null && index < names.length) {
+				String name = names[index++];
+				try {
+					if (applicationContext.isSingleton(name)) {
+						next = type.cast(cache.bean(name));
+					}
+					else {
+						next = applicationContext.getBean(name, type);
+					}
+				}
+				catch (NoSuchBeanDefinitionException e) {
+					// removed since the names were found.
+				}
+			}
+			return next != null;
+		}
+		
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T result = next;
+			next = null;
+			return result;
+		}
 	}
 	
 	public Object lookup(String path) {
-		PathBreakdown breakdown = new PathBreakdown(path);
-		Object bean = applicationContext.getBean(breakdown.getId());
+		checkCurrent();
+		PathBreakdown breakdown = cache.breakdown(path);
+		Object bean = cache.bean(breakdown.getId());
 		if (bean == null) {
 			return null;
 		}
 		if (breakdown.isNested()) {
 			if (bean instanceof BeanDirectoryOwner) {
-				BeanDirectory next = ((BeanDirectoryOwner) bean).provideBeanDirectory();
+				BeanDirectory next = cache.directory(breakdown.getId(), 
+						(BeanDirectoryOwner) bean);
 				if (next == null) {
 					return null;
 				}
@@ -80,8 +273,7 @@ public class BeanDirectoryAdaptor implements BeanDirectory {
 		}
 		else {
 			if (breakdown.isProperty()) {
-				PropertyAccessor propertyAccessor = session.getTools().getPropertyAccessor();
-				return propertyAccessor.getProperty(bean, breakdown.getProperty()); 
+				return getters.getProperty(bean, breakdown.getProperty()); 
 			}
 			else {
 				return bean;
@@ -91,14 +283,16 @@ public class BeanDirectoryAdaptor implements BeanDirectory {
 	
 	public <T> T lookup(String path, Class<T> required) 
 	throws ArooaConversionException {
-		PathBreakdown breakdown = new PathBreakdown(path);
-		Object bean = applicationContext.getBean(breakdown.getId());
+		checkCurrent();
+		PathBreakdown breakdown = cache.breakdown(path);
+		Object bean = cache.bean(breakdown.getId());
 		if (bean == null) {
 			return null;
 		}
 		if (breakdown.isNested()) {
 			if (bean instanceof BeanDirectoryOwner) {
-				BeanDirectory next = ((BeanDirectoryOwner) bean).provideBeanDirectory();
+				BeanDirectory next = cache.directory(breakdown.getId(), 
+						(BeanDirectoryOwner) bean);
 				if (next == null) {
 					return null;
 				}
@@ -111,14 +305,116 @@ public class BeanDirectoryAdaptor implements BeanDirectory {
 		else {
 			Object value;
 			if (breakdown.isProperty()) {
-				PropertyAccessor propertyAccessor = session.getTools().getPropertyAccessor();
-				value = propertyAccessor.getProperty(bean, breakdown.getProperty()); 
+				value = getters.getProperty(bean, breakdown.getProperty()); 
+			}
+			else {
+				value = bean;
+			}
+			return cache.converter(session.getTools().getArooaConverter())
+					.convert(value, required);
+		}
+	}
+	
+	@Override
+	public Map<String, Object> lookupAll(Collection<String> paths) {
+		checkCurrent();
+		try {
+			return lookupAll(paths, null, null);
+		}
+		catch (ArooaConversionException e) {
+			// Nothing is converted.
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@Override
+	public <T> Map<String, T> lookupAll(Collection<String> paths, 
+			Class<T> required) 
+	throws ArooaConversionException {
+		checkCurrent();
+		return lookupAll(paths, required, 
+				cache.converter(session.getTools().getArooaConverter()));
+	}
+	
+	/**
+	 * Look up many paths, grouping them by bean id so each bean is found
+	 * once, and passing the nested paths of each nested component to its
+	 * directory together.
+	 * 
+	 * @param paths The paths.
+	 * @param required The type required, or null for no conversion.
+	 * @param converter The converter, or null for no conversion.
+	 * 
+	 * @return The values by path.
+	 * 
+	 * @throws ArooaConversionException If a value can't be converted.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> Map<String, T> lookupAll(Collection<String> paths, 
+			Class<T> required, CachingConverter converter) 
+	throws ArooaConversionException {
+		
+		Map<String, T> results = new LinkedHashMap<String, T>();
+		Map<String, Object> beans = new HashMap<String, Object>();
+		Map<String, Map<String, String>> nested = 
+				new LinkedHashMap<String, Map<String, String>>();
+		
+		for (String path : paths) {
+			PathBreakdown breakdown = cache.breakdown(path);
+			String id = breakdown.getId();
+			
+			Object bean = beans.get(id);
+			if (bean == null && !beans.containsKey(id)) {
+				bean = cache.bean(id);
+				beans.put(id, bean);
+			}
+			
+			results.put(path, null);
+			if (bean == null) {
+				continue;
+			}
+			if (breakdown.isNested()) {
+				if (bean instanceof BeanDirectoryOwner) {
+					Map<String, String> forBean = nested.get(id);
+					if (forBean == null) {
+						forBean = new LinkedHashMap<String, String>();
+						nested.put(id, forBean);
+					}
+					forBean.put(path, breakdown.getNestedPath());
+				}
+				continue;
+			}
+			
+			Object value;
+			if (breakdown.isProperty()) {
+				value = getters.getProperty(bean, breakdown.getProperty()); 
 			}
 			else {
 				value = bean;
 			}
-			ArooaConverter converter = session.getTools().getArooaConverter();
-			return converter.convert(value, required);
+			results.put(path, converter == null ? 
+					(T) value : converter.convert(value, required));
+		}
+		
+		for (Map.Entry<String, Map<String, String>> entry : nested.entrySet()) {
+			String id = entry.getKey();
+			BeanDirectory next = cache.directory(id, 
+					(BeanDirectoryOwner) beans.get(id));
+			if (next == null) {
+				continue;
+			}
+			Map<String, String> nestedPaths = entry.getValue();
+			Map<String, ?> values = converter == null ?
+					BulkBeanDirectory.lookupEach(next, 
+							new LinkedHashSet<String>(nestedPaths.values())) :
+					BulkBeanDirectory.lookupEach(next, 
+							new LinkedHashSet<String>(nestedPaths.values()), 
+							required);
+			for (Map.Entry<String, String> path : nestedPaths.entrySet()) {
+				results.put(path.getKey(), (T) values.get(path.getValue()));
+			}
 		}
+		
+		return results;
 	}
 }
@@ -0,0 +1,79 @@
+package org.oddjob.spring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.oddjob.arooa.ArooaSession;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Holds the one {@link BeanDirectoryAdaptor} a Spring component provides
+ * for the application context it currently has, so that the same adaptor,
+ * and everything it has cached, is provided every time it is asked for.
+ * <p>
+ * Each adaptor published is given a new generation. Withdrawing the
+ * adaptor, or publishing another, moves the generation on so that an
+ * adaptor still held from before fails rather than provide stale beans.
+ *
+ * @see SpringService
+ * @see SpringBeans
+ */
+public class BeanDirectoryPublisher {
+
+	/** The current generation. */
+	private final AtomicLong generation = new AtomicLong();
+
+	/** Provides the current generation to adaptors. */
+	private final LongSupplier currentGeneration = new LongSupplier() {
+		@Override
+		public long getAsLong() {
+			return generation.get();
+		}
+	};
+
+	/** The current adaptor. */
+	private volatile BeanDirectoryAdaptor current;
+
+	/**
+	 * Publish a new adaptor for an application context.
+	 *
+	 * @param applicationContext The context.
+	 * @param session The session.
+	 *
+	 * @return The adaptor now current.
+	 */
+	public synchronized BeanDirectoryAdaptor publish(
+			ApplicationContext applicationContext, ArooaSession session) {
+		BeanDirectoryAdaptor adaptor = new BeanDirectoryAdaptor(
+				applicationContext, session,
+				generation.incrementAndGet(), currentGeneration);
+		current = adaptor;
+		return adaptor;
+	}
+
+	/**
+	 * Withdraw the current adaptor, if there is one.
+	 */
+	public synchronized void withdraw() {
+		generation.incrementAndGet();
+		current = null;
+	}
+
+	/**
+	 * Get the current adaptor.
+	 *
+	 * @return The adaptor or null if none is published.
+	 */
+	public BeanDirectoryAdaptor getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Get the current generation.
+	 *
+	 * @return The generation.
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+}
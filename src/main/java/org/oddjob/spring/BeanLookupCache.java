@@ -0,0 +1,286 @@
+package org.oddjob.spring;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.oddjob.arooa.convert.ArooaConverter;
+import org.oddjob.arooa.registry.BeanDirectory;
+import org.oddjob.arooa.registry.BeanDirectoryOwner;
+import org.oddjob.arooa.registry.PathBreakdown;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ApplicationContextEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.AbstractApplicationContext;
+
+/**
+ * Caches what {@link BeanDirectoryAdaptor} works out when looking up a
+ * path, so that evaluating the same expressions again and again doesn't
+ * repeat the work. There is one cache for each application context,
+ * shared by all the adaptors for it.
+ * <p>
+ * The cache holds parsed paths, singleton beans, the
+ * {@link BeanDirectory} of nested Spring components, and the names of
+ * the beans of each type asked for. It is cleared when
+ * the context is refreshed and dropped when the context is closed.
+ * The shared cache is held by a listener added to the context, so it
+ * lives no longer than the context does, even if the context is never
+ * closed.
+ * <p>
+ * Anything that destroys singletons in a running context, such as
+ * {@link BeanDefinitionReloader}, must call {@link #clear()}.
+ */
+public class BeanLookupCache {
+
+	/** The maximum number of paths to keep. */
+	static final int MAX_PATHS = 1024;
+
+	/** The context. */
+	private final ApplicationContext applicationContext;
+
+	/** Parsed paths. */
+	private final Map<String, PathBreakdown> paths =
+			new ConcurrentHashMap<String, PathBreakdown>();
+
+	/** Singleton beans by id. */
+	private final Map<String, Object> singletons =
+			new ConcurrentHashMap<String, Object>();
+
+	/** The directories of nested Spring components by id. */
+	private final Map<String, BeanDirectoryAdaptor> directories =
+			new ConcurrentHashMap<String, BeanDirectoryAdaptor>();
+
+	/** Bean names by type. */
+	private final Map<Class<?>, String[]> namesByType =
+			new ConcurrentHashMap<Class<?>, String[]>();
+
+	/** Remembers conversions. Kept when the cache is cleared. */
+	private volatile CachingConverter converter;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param applicationContext The context.
+	 */
+	BeanLookupCache(ApplicationContext applicationContext) {
+		this.applicationContext = applicationContext;
+	}
+
+	/**
+	 * Provide the cache for an application context, creating it if
+	 * necessary. Only active contexts that are 
+	 * {@link AbstractApplicationContext}s share a cache, because only 
+	 * these can tell the cache when they close and provide the listener 
+	 * that holds it. Others get a cache of their own each time.
+	 *
+	 * @param applicationContext The context.
+	 *
+	 * @return The cache. Never null.
+	 */
+	public static BeanLookupCache forContext(ApplicationContext applicationContext) {
+		if (!(applicationContext instanceof AbstractApplicationContext)) {
+			return new BeanLookupCache(applicationContext);
+		}
+		AbstractApplicationContext context =
+				(AbstractApplicationContext) applicationContext;
+		synchronized (BeanLookupCache.class) {
+			BeanLookupCache cache = find(context);
+			if (cache == null) {
+				cache = new BeanLookupCache(applicationContext);
+				if (context.isActive()) {
+					context.addApplicationListener(
+							new Invalidator(context, cache));
+				}
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Clear the cache for an application context if there is one.
+	 *
+	 * @param applicationContext The context.
+	 */
+	public static void clear(ApplicationContext applicationContext) {
+		if (!(applicationContext instanceof AbstractApplicationContext)) {
+			return;
+		}
+		BeanLookupCache cache;
+		synchronized (BeanLookupCache.class) {
+			cache = find((AbstractApplicationContext) applicationContext);
+		}
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Find the cache held by the context's listener.
+	 *
+	 * @param context The context.
+	 *
+	 * @return The cache or null if there isn't one.
+	 */
+	private static BeanLookupCache find(AbstractApplicationContext context) {
+		for (ApplicationListener<?> listener :
+				context.getApplicationListeners()) {
+			if (listener instanceof Invalidator &&
+					((Invalidator) listener).applicationContext == context) {
+				BeanLookupCache cache = ((Invalidator) listener).cache;
+				if (cache != null) {
+					return cache;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Provide the breakdown of a path.
+	 *
+	 * @param path The path.
+	 *
+	 * @return The breakdown. Never null.
+	 */
+	public PathBreakdown breakdown(String path) {
+		PathBreakdown breakdown = paths.get(path);
+		if (breakdown == null) {
+			breakdown = new PathBreakdown(path);
+			if (paths.size() >= MAX_PATHS) {
+				paths.clear();
+			}
+			paths.put(path, breakdown);
+		}
+		return breakdown;
+	}
+
+	/**
+	 * Provide the bean for the id. Singletons are remembered, anything
+	 * else is got from the context every time.
+	 *
+	 * @param id The bean id.
+	 *
+	 * @return The bean. May be null.
+	 */
+	public Object bean(String id) {
+		Object bean = singletons.get(id);
+		if (bean == null) {
+			bean = applicationContext.getBean(id);
+			if (bean != null && applicationContext.isSingleton(id)) {
+				singletons.put(id, bean);
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * Provide the bean directory of a bean that is a
+	 * {@link BeanDirectoryOwner}. The directory of a nested Spring
+	 * component is remembered while its context is active, any other
+	 * directory is asked for every time as it may change.
+	 *
+	 * @param id The bean id.
+	 * @param owner The bean.
+	 *
+	 * @return The directory. May be null.
+	 */
+	public BeanDirectory directory(String id, BeanDirectoryOwner owner) {
+		BeanDirectoryAdaptor directory = directories.get(id);
+		if (directory != null && directory.isActive()) {
+			return directory;
+		}
+		BeanDirectory next = owner.provideBeanDirectory();
+		if (next instanceof BeanDirectoryAdaptor &&
+				singletons.get(id) == owner) {
+			directories.put(id, (BeanDirectoryAdaptor) next);
+		}
+		else {
+			directories.remove(id);
+		}
+		return next;
+	}
+
+	/**
+	 * Provide the names of the beans of a type, including prototypes.
+	 * The type of a lazy bean is worked out from its definition, so 
+	 * finding the names never creates a bean. This means the products of
+	 * lazy factory beans that haven't been created yet aren't included.
+	 *
+	 * @param type The type.
+	 *
+	 * @return The names. Never null.
+	 */
+	public String[] namesForType(Class<?> type) {
+		String[] names = namesByType.get(type);
+		if (names == null) {
+			names = applicationContext.getBeanNamesForType(type, true, false);
+			namesByType.put(type, names);
+		}
+		return names;
+	}
+
+	/**
+	 * Provide a converter that remembers conversion paths found by the 
+	 * given converter. The same converter is provided for as long as it
+	 * is asked for with the same Arooa converter.
+	 *
+	 * @param arooaConverter The converter from the session.
+	 *
+	 * @return A caching converter. Never null.
+	 */
+	public CachingConverter converter(ArooaConverter arooaConverter) {
+		CachingConverter converter = this.converter;
+		if (converter == null || converter.getConverter() != arooaConverter) {
+			converter = new CachingConverter(arooaConverter);
+			this.converter = converter;
+		}
+		return converter;
+	}
+
+	/**
+	 * Forget everything except conversions.
+	 */
+	public void clear() {
+		paths.clear();
+		singletons.clear();
+		directories.clear();
+		namesByType.clear();
+	}
+
+	/**
+	 * Holds the cache for a context. Clears the cache when the context 
+	 * refreshes and drops it when the context closes.
+	 */
+	static class Invalidator
+	implements ApplicationListener<ApplicationContextEvent> {
+
+		private final ApplicationContext applicationContext;
+
+		private volatile BeanLookupCache cache;
+
+		Invalidator(ApplicationContext applicationContext,
+				BeanLookupCache cache) {
+			this.applicationContext = applicationContext;
+			this.cache = cache;
+		}
+
+		@Override
+		public void onApplicationEvent(ApplicationContextEvent event) {
+			if (event.getApplicationContext() != applicationContext) {
+				return;
+			}
+			BeanLookupCache cache = this.cache;
+			if (cache == null) {
+				return;
+			}
+			if (event instanceof ContextClosedEvent) {
+				this.cache = null;
+				cache.clear();
+			}
+			else if (event instanceof ContextRefreshedEvent) {
+				cache.clear();
+			}
+		}
+	}
+}
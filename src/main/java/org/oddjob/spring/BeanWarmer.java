@@ -0,0 +1,200 @@
+package org.oddjob.spring;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+
+/**
+ * Creates lazy singletons in the background after an application context
+ * has been refreshed with {@link LazyInitPostProcessor}. Beans are created
+ * in the order given on a bounded number of threads.
+ * <p>
+ * A bean that is asked for, for instance by a lookup from Oddjob, before
+ * the warmer gets to it is created straight away on the thread asking for
+ * it, and is then skipped by the warmer. Note that Spring only creates one
+ * singleton at a time so more than one thread rarely helps.
+ * <p>
+ * Spring only calls {@link SmartInitializingSingleton} beans back once 
+ * it has created the eager singletons, which lazy beans miss. Once every
+ * bean has been warmed up the warmer calls back those that are 
+ * {@link SmartInitializingSingleton}s instead, including any that were 
+ * created before the warmer got to them.
+ * <p>
+ * The warmer stops when the application context is closed.
+ * 
+ * @see SpringBase#setWarmUp(boolean)
+ */
+public class BeanWarmer implements ApplicationListener<ContextClosedEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(BeanWarmer.class);
+
+	private static final AtomicInteger instanceCount = new AtomicInteger();
+	
+	/** The factory to create beans with. */
+	private final ConfigurableListableBeanFactory beanFactory;
+	
+	/** The names of all the beans to create, in order. */
+	private final List<String> beanNames;
+	
+	/** The names of beans still to create. */
+	private final LinkedBlockingDeque<String> queue;
+	
+	/** The number of threads still warming up. */
+	private final AtomicInteger running = new AtomicInteger();
+	
+	/** Set when stopped. */
+	private volatile boolean stopped;
+	
+	/** The threads. */
+	private final ExecutorService executor;
+	
+	/** The number of threads. */
+	private final int threads;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param beanFactory The factory to create the beans with.
+	 * @param beanNames The names of the beans to create, in priority order.
+	 * @param threads The number of threads to use.
+	 */
+	public BeanWarmer(ConfigurableListableBeanFactory beanFactory, 
+			Collection<String> beanNames, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread required.");
+		}
+		this.beanFactory = beanFactory;
+		this.beanNames = new ArrayList<String>(beanNames);
+		this.queue = new LinkedBlockingDeque<String>(beanNames);
+		this.threads = threads;
+		
+		final String threadName = "BeanWarmer-" + instanceCount.incrementAndGet();
+		this.executor = new ThreadPoolExecutor(threads, threads, 
+				0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), 
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, threadName);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+	
+	/**
+	 * Start warming up beans.
+	 */
+	public void start() {
+		logger.info("Warming up " + queue.size() + " beans on " + 
+				threads + " thread(s).");
+		
+		running.set(threads);
+		for (int i = 0; i < threads; ++i) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						warm();
+					}
+					finally {
+						if (running.decrementAndGet() == 0) {
+							finished();
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+	}
+	
+	/**
+	 * Stop warming up beans. A bean currently being created will still
+	 * complete, but no beans are called back.
+	 */
+	public void stop() {
+		stopped = true;
+		queue.clear();
+	}
+	
+	/**
+	 * Wait for warming up, and calling back the beans, to finish.
+	 * 
+	 * @param timeout The maximum time to wait in milliseconds.
+	 * 
+	 * @return true if finished, false if the timeout elapsed.
+	 * 
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public boolean awaitFinished(long timeout) throws InterruptedException {
+		return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Get the number of beans still to be warmed up.
+	 * 
+	 * @return The number of beans.
+	 */
+	public int getRemaining() {
+		return queue.size();
+	}
+	
+	@Override
+	public void onApplicationEvent(ContextClosedEvent event) {
+		stop();
+	}
+	
+	protected void warm() {
+		for (String beanName = queue.pollFirst(); beanName != null; 
+				beanName = queue.pollFirst()) {
+			if (beanFactory.containsSingleton(beanName)) {
+				continue;
+			}
+			try {
+				beanFactory.getBean(beanName);
+			}
+			catch (BeansException e) {
+				logger.warn("Failed warming up bean " + beanName + 
+						", it will be created when next asked for.", e);
+			}
+		}
+	}
+	
+	/**
+	 * Called on the last thread to finish warming up. Calls back the 
+	 * beans as Spring would have had they not been lazy.
+	 */
+	protected void finished() {
+		for (String beanName : beanNames) {
+			if (stopped) {
+				return;
+			}
+			Object singleton = beanFactory.getSingleton(beanName);
+			if (singleton instanceof SmartInitializingSingleton) {
+				try {
+					((SmartInitializingSingleton) singleton)
+							.afterSingletonsInstantiated();
+				}
+				catch (RuntimeException e) {
+					logger.warn("Failed calling back bean " + beanName + 
+							" after warming up.", e);
+				}
+			}
+		}
+		logger.debug("Finished warming up.");
+	}
+}
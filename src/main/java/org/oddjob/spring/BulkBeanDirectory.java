@@ -0,0 +1,87 @@
+package org.oddjob.spring;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.oddjob.arooa.convert.ArooaConversionException;
+import org.oddjob.arooa.registry.BeanDirectory;
+
+/**
+ * A {@link BeanDirectory} that can look up many paths at once, so that
+ * a bean used by several paths is only found once.
+ *
+ * @see SpringService#provideBeanDirectory()
+ */
+public interface BulkBeanDirectory extends BeanDirectory {
+
+	/**
+	 * Look up many paths.
+	 *
+	 * @param paths The paths.
+	 *
+	 * @return The value of each path, in the order given. A value is null
+	 * where {@link #lookup(String)} would return null.
+	 */
+	Map<String, Object> lookupAll(Collection<String> paths);
+
+	/**
+	 * Look up many paths, converting each value to the required type.
+	 *
+	 * @param paths The paths.
+	 * @param required The type required.
+	 *
+	 * @return The value of each path, in the order given. A value is null
+	 * where {@link #lookup(String, Class)} would return null.
+	 *
+	 * @throws ArooaConversionException If any value can't be converted.
+	 */
+	<T> Map<String, T> lookupAll(Collection<String> paths, Class<T> required)
+	throws ArooaConversionException;
+
+	/**
+	 * Look up many paths in any directory, all at once if it is a
+	 * {@link BulkBeanDirectory} or one at a time if it isn't.
+	 *
+	 * @param directory The directory.
+	 * @param paths The paths.
+	 *
+	 * @return The value of each path, in the order given.
+	 */
+	static Map<String, Object> lookupEach(BeanDirectory directory,
+			Collection<String> paths) {
+		if (directory instanceof BulkBeanDirectory) {
+			return ((BulkBeanDirectory) directory).lookupAll(paths);
+		}
+		Map<String, Object> results = new LinkedHashMap<String, Object>();
+		for (String path : paths) {
+			results.put(path, directory.lookup(path));
+		}
+		return results;
+	}
+
+	/**
+	 * Look up many paths in any directory, converting each value to the
+	 * required type.
+	 *
+	 * @param directory The directory.
+	 * @param paths The paths.
+	 * @param required The type required.
+	 *
+	 * @return The value of each path, in the order given.
+	 *
+	 * @throws ArooaConversionException If any value can't be converted.
+	 */
+	static <T> Map<String, T> lookupEach(BeanDirectory directory,
+			Collection<String> paths, Class<T> required)
+	throws ArooaConversionException {
+		if (directory instanceof BulkBeanDirectory) {
+			return ((BulkBeanDirectory) directory).lookupAll(paths, required);
+		}
+		Map<String, T> results = new LinkedHashMap<String, T>();
+		for (String path : paths) {
+			results.put(path, directory.lookup(path, required));
+		}
+		return results;
+	}
+}
@@ -0,0 +1,129 @@
+package org.oddjob.spring;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.oddjob.arooa.convert.ArooaConversionException;
+import org.oddjob.arooa.convert.ArooaConverter;
+import org.oddjob.arooa.convert.ConversionPath;
+
+/**
+ * Remembers the {@link ConversionPath} an {@link ArooaConverter} finds
+ * from one class to another, so that converting values of the same class
+ * to the same type again doesn't search for the path again.
+ * <p>
+ * That there is no conversion is remembered too. The first attempt fails
+ * with the converter's own exception. Later attempts fail straight away,
+ * without searching again, with a new exception of the same type and 
+ * message whose cause is the first exception.
+ * <p>
+ * Nulls, values that are already of the required type and conversions
+ * to primitive types are left to the converter.
+ *
+ * @see BeanDirectoryAdaptor
+ */
+public class CachingConverter {
+
+	/** The converter. */
+	private final ArooaConverter converter;
+
+	/** Paths, or the failure saying there isn't one, by from and to class. */
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, Object>> paths =
+			new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, Object>>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param converter The converter to find paths with.
+	 */
+	public CachingConverter(ArooaConverter converter) {
+		this.converter = converter;
+	}
+
+	/**
+	 * Convert a value.
+	 *
+	 * @param value The value. May be null.
+	 * @param required The type required.
+	 *
+	 * @return The converted value.
+	 *
+	 * @throws ArooaConversionException If there is no conversion or the
+	 * conversion fails.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T convert(Object value, Class<T> required)
+	throws ArooaConversionException {
+		if (value == null || required.isPrimitive() ||
+				required.isInstance(value)) {
+			return converter.convert(value, required);
+		}
+
+		ConcurrentMap<Class<?>, Object> from = paths.computeIfAbsent(
+				value.getClass(), k -> new ConcurrentHashMap<Class<?>, Object>());
+
+		Object path = from.get(required);
+		if (path == null) {
+			path = converter.findConversion(value.getClass(), required);
+			if (path == null) {
+				try {
+					return converter.convert(value, required);
+				}
+				catch (ArooaConversionException e) {
+					from.put(required, new NoConversion(e));
+					throw e;
+				}
+			}
+			from.put(required, path);
+		}
+
+		if (path instanceof NoConversion) {
+			throw ((NoConversion) path).failure();
+		}
+
+		return ((ConversionPath<Object, T>) path).convert(value, converter);
+	}
+
+	/**
+	 * Getter for the converter.
+	 *
+	 * @return The converter paths are found with.
+	 */
+	public ArooaConverter getConverter() {
+		return converter;
+	}
+
+	/**
+	 * Remembers that there is no conversion.
+	 */
+	static class NoConversion {
+
+		/** The exception from the first attempt. */
+		private final ArooaConversionException first;
+
+		NoConversion(ArooaConversionException first) {
+			this.first = first;
+		}
+
+		/**
+		 * Create the exception for a later attempt. This is of the same 
+		 * type as the first if that type can be created from a message,
+		 * otherwise it is an {@link ArooaConversionException}.
+		 *
+		 * @return A new exception caused by the first. Never null.
+		 */
+		ArooaConversionException failure() {
+			ArooaConversionException e;
+			try {
+				e = first.getClass().getConstructor(String.class)
+						.newInstance(first.getMessage());
+				e.initCause(first);
+			}
+			catch (ReflectiveOperationException | IllegalStateException ex) {
+				e = new ArooaConversionException(first.getMessage());
+				e.initCause(first);
+			}
+			return e;
+		}
+	}
+}
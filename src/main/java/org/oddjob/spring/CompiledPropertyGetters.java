@@ -0,0 +1,168 @@
+package org.oddjob.spring;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.oddjob.arooa.reflect.PropertyAccessor;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Reads bean properties through {@link MethodHandle}s that are created
+ * once for each class and property name, rather than reflectively on
+ * every read.
+ * <p>
+ * Only simple properties with a public getter are read this way.
+ * Nested, indexed and mapped properties, maps and dynamic beans, whose
+ * properties are their entries rather than their getters, and anything
+ * else without a getter that can be found, are read with Oddjob's
+ * {@link PropertyAccessor} as before. If a getter throws, the property
+ * is read again with the {@link PropertyAccessor} so that the failure is
+ * reported just as it would have been without compiling.
+ *
+ * @see BeanDirectoryAdaptor
+ */
+public class CompiledPropertyGetters {
+
+	/** The name of the interface of Commons BeanUtils dynamic beans. */
+	private static final String DYNA_BEAN = 
+			"org.apache.commons.beanutils.DynaBean";
+
+	/** Marks a property that can't be compiled. */
+	static final MethodHandle NONE = MethodHandles.constant(
+			Object.class, null);
+
+	/** The type all getters are adapted to. */
+	private static final MethodType GETTER_TYPE = MethodType.methodType(
+			Object.class, Object.class);
+
+	/** Getters by class, then property name. */
+	private static final ClassValue<ConcurrentMap<String, MethodHandle>> getters =
+			new ClassValue<ConcurrentMap<String, MethodHandle>>() {
+		@Override
+		protected ConcurrentMap<String, MethodHandle> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<String, MethodHandle>();
+		}
+	};
+
+	/** Used for anything that can't be compiled. */
+	private final PropertyAccessor fallback;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param fallback The property accessor to use for properties that
+	 * can't be compiled.
+	 */
+	public CompiledPropertyGetters(PropertyAccessor fallback) {
+		this.fallback = fallback;
+	}
+
+	/**
+	 * Get the value of a property.
+	 *
+	 * @param bean The bean. Must not be null.
+	 * @param property The property name or expression.
+	 *
+	 * @return The value.
+	 */
+	public Object getProperty(Object bean, String property) {
+		MethodHandle getter = getter(bean.getClass(), property);
+		if (getter == NONE) {
+			return fallback.getProperty(bean, property);
+		}
+		try {
+			return (Object) getter.invokeExact(bean);
+		}
+		catch (Throwable t) {
+			return fallback.getProperty(bean, property);
+		}
+	}
+
+	/**
+	 * Provide the getter for a property of a class, creating it if it
+	 * hasn't been asked for before.
+	 *
+	 * @param type The class.
+	 * @param property The property name.
+	 *
+	 * @return The getter, or {@link #NONE}.
+	 */
+	static MethodHandle getter(Class<?> type, String property) {
+		ConcurrentMap<String, MethodHandle> forType = getters.get(type);
+		MethodHandle getter = forType.get(property);
+		if (getter == null) {
+			getter = compile(type, property);
+			forType.putIfAbsent(property, getter);
+		}
+		return getter;
+	}
+
+	/**
+	 * Create a getter.
+	 *
+	 * @param type The class.
+	 * @param property The property name.
+	 *
+	 * @return The getter, or {@link #NONE} if there isn't a simple public
+	 * getter for the property, or the class is a map or dynamic bean.
+	 */
+	static MethodHandle compile(Class<?> type, String property) {
+		if (!isSimple(property) || isDynamic(type)) {
+			return NONE;
+		}
+		PropertyDescriptor descriptor =
+				BeanUtils.getPropertyDescriptor(type, property);
+		if (descriptor == null || descriptor.getReadMethod() == null) {
+			return NONE;
+		}
+		Method method = ClassUtils.getInterfaceMethodIfPossible(
+				descriptor.getReadMethod());
+		try {
+			return MethodHandles.publicLookup().unreflect(method)
+					.asType(GETTER_TYPE);
+		}
+		catch (IllegalAccessException e) {
+			return NONE;
+		}
+	}
+
+	/**
+	 * Are the properties of instances of the class something other than
+	 * what its getters return.
+	 *
+	 * @param type The class.
+	 *
+	 * @return true for maps and dynamic beans.
+	 */
+	static boolean isDynamic(Class<?> type) {
+		if (Map.class.isAssignableFrom(type)) {
+			return true;
+		}
+		for (Class<?> face : ClassUtils.getAllInterfacesForClassAsSet(type)) {
+			if (DYNA_BEAN.equals(face.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static boolean isSimple(String property) {
+		if (property.isEmpty() ||
+				!Character.isJavaIdentifierStart(property.charAt(0))) {
+			return false;
+		}
+		for (int i = 1; i < property.length(); ++i) {
+			if (!Character.isJavaIdentifierPart(property.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
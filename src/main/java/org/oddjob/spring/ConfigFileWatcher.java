@@ -0,0 +1,180 @@
+package org.oddjob.spring;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+/**
+ * Watches configuration files for changes with a {@link WatchService}
+ * and tells a listener which have changed.
+ * <p>
+ * Editors often write a file several times when saving it, so once a
+ * change is seen the watcher waits until there have been no more changes
+ * for the settle time before telling the listener.
+ *
+ * @see SpringService#setWatch(boolean)
+ */
+public class ConfigFileWatcher implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(
+			ConfigFileWatcher.class);
+
+	/** The resources watched, by absolute path. */
+	private final Map<Path, Resource> watched = new LinkedHashMap<Path, Resource>();
+
+	/** Told of the resources that have changed. */
+	private final Consumer<List<Resource>> listener;
+
+	/** Milliseconds to wait for changes to settle. */
+	private final long settleTime;
+
+	/** The watch service. */
+	private final WatchService watchService;
+
+	/** The thread waiting for changes. */
+	private final Thread thread;
+
+	/**
+	 * Constructor. Resources that aren't files are ignored.
+	 *
+	 * @param resources The resources to watch.
+	 * @param listener Told of the resources that have changed.
+	 * @param settleTime Milliseconds to wait for changes to settle.
+	 *
+	 * @throws IOException If the watch service can't be created.
+	 */
+	public ConfigFileWatcher(Collection<? extends Resource> resources,
+			Consumer<List<Resource>> listener, long settleTime)
+	throws IOException {
+		this.listener = listener;
+		this.settleTime = settleTime;
+
+		Set<Path> directories = new LinkedHashSet<Path>();
+		for (Resource resource : resources) {
+			Path path;
+			try {
+				path = resource.getFile().toPath().toAbsolutePath().normalize();
+			}
+			catch (IOException e) {
+				logger.warn("Can't watch " + resource.getDescription() +
+						" as it isn't a file.");
+				continue;
+			}
+			watched.put(path, resource);
+			directories.add(path.getParent());
+		}
+
+		this.watchService = FileSystems.getDefault().newWatchService();
+		try {
+			for (Path directory : directories) {
+				directory.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+			}
+		}
+		catch (IOException e) {
+			watchService.close();
+			throw e;
+		}
+
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "ConfigFileWatcher");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Start watching.
+	 */
+	public void start() {
+		logger.info("Watching " + watched.keySet() + " for changes.");
+		thread.start();
+	}
+
+	/**
+	 * Stop watching.
+	 */
+	@Override
+	public void close() {
+		try {
+			watchService.close();
+		}
+		catch (IOException e) {
+			logger.debug("Failed closing watch service.", e);
+		}
+		thread.interrupt();
+	}
+
+	/**
+	 * Wait for changes until closed.
+	 */
+	protected void watch() {
+		try {
+			while (true) {
+				Set<Path> changed = new LinkedHashSet<Path>();
+
+				collect(watchService.take(), changed);
+
+				WatchKey key;
+				while ((key = watchService.poll(
+						settleTime, TimeUnit.MILLISECONDS)) != null) {
+					collect(key, changed);
+				}
+
+				List<Resource> resources = new ArrayList<Resource>();
+				for (Map.Entry<Path, Resource> entry : watched.entrySet()) {
+					if (changed.contains(entry.getKey())) {
+						resources.add(entry.getValue());
+					}
+				}
+				if (resources.isEmpty()) {
+					continue;
+				}
+				try {
+					listener.accept(resources);
+				}
+				catch (RuntimeException e) {
+					logger.error("Failed handling change to " + resources, e);
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			logger.debug("Stopped watching.");
+		}
+	}
+
+	private void collect(WatchKey key, Set<Path> changed) {
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed.addAll(watched.keySet());
+			}
+			else {
+				changed.add(directory.resolve((Path) event.context()));
+			}
+		}
+		key.reset();
+	}
+}
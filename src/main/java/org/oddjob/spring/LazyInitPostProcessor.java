@@ -0,0 +1,56 @@
+package org.oddjob.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+/**
+ * A {@link BeanFactoryPostProcessor} that marks every bean definition 
+ * as lazy so that refreshing the application context doesn't wait for all 
+ * the singletons to be created.
+ * <p>
+ * The names of the singletons that would have been created eagerly are 
+ * remembered, in the order Spring would have created them, so that they
+ * can be warmed up in the background by a {@link BeanWarmer}.
+ * 
+ * @see SpringBase#setLazyInit(boolean)
+ */
+public class LazyInitPostProcessor implements BeanFactoryPostProcessor {
+
+	/** The singletons made lazy. */
+	private final List<String> madeLazy = new ArrayList<String>(); 
+	
+	@Override
+	public void postProcessBeanFactory(
+			ConfigurableListableBeanFactory beanFactory) throws BeansException {
+		
+		for (String beanName : beanFactory.getBeanDefinitionNames()) {
+			
+			BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+			
+			if (definition.isLazyInit()) {
+				continue;
+			}
+			
+			definition.setLazyInit(true);
+			
+			if (definition.isSingleton() && !definition.isAbstract()) {
+				madeLazy.add(beanName);
+			}
+		}
+	}
+	
+	/**
+	 * Provide the names of the singletons that were made lazy.
+	 * 
+	 * @return The names, in definition order.
+	 */
+	public List<String> getMadeLazy() {
+		return Collections.unmodifiableList(madeLazy);
+	}
+}
@@ -20,14 +20,26 @@ public class OddjobApplicationContext extends AbstractApplicationContext {
 	
 	private final ConfigurableListableBeanFactory beanFactory; 
 	
+	/** Provides beans from Oddjob. */
+	private final OddjobBeanFactory oddjobBeanFactory;
+	
 	/**
 	 * Constructor.
 	 * 
 	 * @param session The session to use from Oddjob.
 	 */
 	public OddjobApplicationContext(ArooaSession session) {
-		beanFactory = new DefaultListableBeanFactory(
-				new OddjobBeanFactory(session));
+		oddjobBeanFactory = new OddjobBeanFactory(session);
+		beanFactory = new DefaultListableBeanFactory(oddjobBeanFactory);
+	}
+	
+	/**
+	 * Getter for the factory that provides beans from Oddjob.
+	 * 
+	 * @return The factory. Never null.
+	 */
+	public OddjobBeanFactory getOddjobBeanFactory() {
+		return oddjobBeanFactory;
 	}
 	
 	@Override
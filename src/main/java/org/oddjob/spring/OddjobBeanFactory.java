@@ -1,7 +1,9 @@
 package org.oddjob.spring;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.oddjob.arooa.ArooaSession;
 import org.oddjob.arooa.convert.ArooaConversionException;
@@ -19,6 +21,21 @@ import org.springframework.core.ResolvableType;
  * Oddjob to be a Spring {@link BeanFactory}.
  * 
  * This allows Spring to access components from Oddjob.
+ * <p>
+ * Oddjob's registry doesn't say when it changes, so nothing is remembered
+ * between calls unless a Spring context using this factory is being
+ * refreshed. Between {@link #beginRefresh()} and 
+ * {@link #endRefresh(RefreshCache)} the type of each bean and the candidates for each type are remembered,
+ * because Spring asks for these again and again while autowiring. Names
+ * that aren't in Oddjob are remembered too, as a child context asks its
+ * parent for every name it can't resolve itself, and failing to find
+ * these again throws an exception without a stack trace.
+ * <p>
+ * One factory is shared by every child context in a session, and these
+ * may refresh at the same time. What's remembered is kept for the thread
+ * doing the refresh, so each refresh starts with nothing remembered and
+ * never sees what another refresh remembered. Lookups from other threads,
+ * such as those creating singletons in parallel, aren't remembered.
  * 
  * @see OddjobApplicationContext
  *  
@@ -30,6 +47,13 @@ public class OddjobBeanFactory implements BeanFactory {
 	/** The session. */
 	private final ArooaSession session;
 
+	/** The maximum number of missing names remembered during a refresh. */
+	static final int MAX_MISSES = 1024;
+	
+	/** What's remembered by the refresh on this thread. Null otherwise. */
+	private final ThreadLocal<RefreshCache> refreshCache = 
+			new ThreadLocal<RefreshCache>();
+
 	/**
 	 * Constructor.
 	 * 
@@ -51,7 +75,31 @@ public class OddjobBeanFactory implements BeanFactory {
 	 */
 	@Override
 	public boolean containsBean(String name) {
-		return session.getBeanRegistry().lookup(name) != null;
+		return findBean(name) != null;
+	}
+
+	/**
+	 * Find a bean in Oddjob's {@link BeanRegistry} without throwing an
+	 * exception if it isn't there.
+	 * 
+	 * @param name The id of the bean in Oddjob.
+	 * 
+	 * @return The bean or null if there isn't one.
+	 */
+	public Object findBean(String name) {
+		
+		RefreshCache cache = refreshCache.get();
+		
+		if (cache != null && cache.misses.contains(name)) {
+			return null;
+		}
+		
+		Object bean = session.getBeanRegistry().lookup(name);
+		
+		if (bean == null && cache != null) {
+			cache.missed(name);
+		}
+		return bean;
 	}
 
 	/**
@@ -84,24 +132,65 @@ public class OddjobBeanFactory implements BeanFactory {
 	 * 
 	 * @see org.springframework.beans.factory.BeanFactory#getBean(java.lang.Class)
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T getBean(Class<T> requiredType) throws BeansException {
 		
-		BeanDirectory registry = session.getBeanRegistry();
+		RefreshCache cache = refreshCache.get();
+		
+		Candidates candidates = cache == null ? null : 
+			cache.candidatesByType.get(requiredType);
+		
+		boolean known = candidates != null;
+		
+		if (!known) {
+			candidates = findCandidates(requiredType);
+			if (cache != null) {
+				cache.candidatesByType.put(requiredType, candidates);
+			}
+		}
+		
+		if (candidates.count == 1) {
+			return (T) candidates.unique; 
+		}
+		
+		if (known) {
+			throw new CachedMissException(requiredType, 
+					"Not exactly one bean found.");
+		}
+		else {
+			throw new NoSuchBeanDefinitionException(requiredType, 
+					"Not exactly one bean found.");
+		}
+	}
+	
+	/**
+	 * Find the beans of a type, stopping at the second.
+	 * 
+	 * @param requiredType The type.
+	 * 
+	 * @return The candidates. Never null.
+	 */
+	Candidates findCandidates(Class<?> requiredType) {
 		
-		Iterable<T> iterable = registry.getAllByType(requiredType);
+		BeanDirectory registry = session.getBeanRegistry();
 		
-		List<T> beans = new ArrayList<T>();
+		Iterable<?> iterable = registry.getAllByType(requiredType);
+		if (iterable == null) {
+			return Candidates.NONE;
+		}
 		
-		for (T bean : iterable) {
-			beans.add(bean);
+		Iterator<?> it = iterable.iterator();
+		if (!it.hasNext()) {
+			return Candidates.NONE;
 		}
-		if (beans.size() == 1) {
-			return beans.get(0); 
+		
+		Object first = it.next();
+		if (it.hasNext()) {
+			return Candidates.MANY;
 		}
 		
-		throw new NoSuchBeanDefinitionException(requiredType, 
-				"Not exactly one bean found.");
+		return new Candidates(first, 1);
 	}
 	
 	/**
@@ -148,8 +237,14 @@ public class OddjobBeanFactory implements BeanFactory {
 	@Override
 	public <T> T getBean(String name, Class<T> requiredType) throws BeansException {
 
+		RefreshCache cache = refreshCache.get();
+		
+		if (cache != null && cache.misses.contains(name)) {
+			throw new CachedMissException(name);
+		}
+		
 		if (requiredType == null) {
-			Object object = session.getBeanRegistry().lookup(name);
+			Object object = findBean(name);
 			
 			if (object == null) {
 				throw new NoSuchBeanDefinitionException(name);
@@ -162,6 +257,8 @@ public class OddjobBeanFactory implements BeanFactory {
 				T object = session.getBeanRegistry().lookup(name, requiredType);
 				
 				if (object == null) {
+					// Not remembered, as only an untyped miss means there
+					// is no bean of this name at all.
 					throw new NoSuchBeanDefinitionException(name);
 				}
 				
@@ -194,8 +291,18 @@ public class OddjobBeanFactory implements BeanFactory {
 	 */
 	@Override
 	public Class<?> getType(String name) throws NoSuchBeanDefinitionException {
-		Object bean = getBean(name);
-		return bean.getClass();
+		
+		RefreshCache cache = refreshCache.get();
+		
+		Class<?> type = cache == null ? null : cache.typesByName.get(name);
+		
+		if (type == null) {
+			type = getBean(name).getClass();
+			if (cache != null) {
+				cache.typesByName.put(name, type);
+			}
+		}
+		return type;
 	}
 
 	@Override
@@ -218,7 +325,7 @@ public class OddjobBeanFactory implements BeanFactory {
 	@Override
 	public boolean isPrototype(String name)
 			throws NoSuchBeanDefinitionException {
-		getBean(name);
+		getType(name);
 		
 		return false;
 	}
@@ -238,7 +345,7 @@ public class OddjobBeanFactory implements BeanFactory {
 	@Override
 	public boolean isSingleton(String name)
 			throws NoSuchBeanDefinitionException {
-		getBean(name);
+		getType(name);
 		
 		return true;
 	}
@@ -260,9 +367,8 @@ public class OddjobBeanFactory implements BeanFactory {
 	@Override
 	public boolean isTypeMatch(String name, Class<?> targetType)
 			throws NoSuchBeanDefinitionException {
-		Object bean = getBean(name);
 		
-		return targetType.isInstance(bean);
+		return targetType.isAssignableFrom(getType(name));
 	}
 
 	/**
@@ -281,19 +387,152 @@ public class OddjobBeanFactory implements BeanFactory {
 	 */
 	@Override
 	public boolean isTypeMatch(String name, ResolvableType typeToMatch) throws NoSuchBeanDefinitionException {
-		Object bean = getBean(name);
 		
-		return typeToMatch.isInstance(bean);
+		return typeToMatch.isAssignableFrom(getType(name));
 	}
 
+	/**
+	 * Provide the beans of a type in Oddjob's {@link BeanRegistry} lazily.
+	 * 
+	 * @param requiredType The type of the beans.
+	 * 
+	 * @return A provider that looks the beans up when asked for them.
+	 * 
+	 * @see OddjobBeanProvider
+	 */
 	@Override
 	public <T> ObjectProvider<T> getBeanProvider(Class<T> requiredType) {
-		return null;
+		return getBeanProvider(ResolvableType.forRawClass(requiredType));
 	}
 
+	/**
+	 * Provide the beans of a type in Oddjob's {@link BeanRegistry} lazily.
+	 * Beans are found by the raw type and then checked against any 
+	 * generics.
+	 * 
+	 * @param requiredType The type of the beans.
+	 * 
+	 * @return A provider that looks the beans up when asked for them.
+	 * 
+	 * @see OddjobBeanProvider
+	 */
 	@Override
 	public <T> ObjectProvider<T> getBeanProvider(ResolvableType requiredType) {
-		return null;
+		return new OddjobBeanProvider<T>(session, requiredType);
 	}
 
+	/**
+	 * Start remembering bean types, candidates and missing names for the
+	 * lookups this thread makes, because a context using this factory is 
+	 * refreshing on it. Nothing remembered by any other refresh is used. 
+	 * Every call must be matched by a call to 
+	 * {@link #endRefresh(RefreshCache)} on the same thread.
+	 * 
+	 * @return The cache for this refresh, to be given to 
+	 * {@link #endRefresh(RefreshCache)}.
+	 */
+	public RefreshCache beginRefresh() {
+		RefreshCache cache = new RefreshCache(refreshCache.get());
+		refreshCache.set(cache);
+		return cache;
+	}
+	
+	/**
+	 * Forget what was remembered for a refresh. If the refresh began 
+	 * while another was in progress on this thread, what the other 
+	 * remembered is used again.
+	 * 
+	 * @param cache The cache from {@link #beginRefresh()}.
+	 */
+	public void endRefresh(RefreshCache cache) {
+		if (refreshCache.get() != cache) {
+			return;
+		}
+		if (cache.previous == null) {
+			refreshCache.remove();
+		}
+		else {
+			refreshCache.set(cache.previous);
+		}
+	}
+	
+	/**
+	 * Are lookups on this thread being remembered?
+	 * 
+	 * @return true if a refresh is in progress on this thread.
+	 */
+	public boolean isRefreshing() {
+		return refreshCache.get() != null;
+	}
+	
+	/**
+	 * The beans of a type. Only the first is kept and the count stops
+	 * at two.
+	 */
+	static class Candidates {
+		
+		static final Candidates NONE = new Candidates(null, 0);
+		
+		static final Candidates MANY = new Candidates(null, 2);
+		
+		final Object unique;
+		
+		final int count;
+		
+		Candidates(Object unique, int count) {
+			this.unique = unique;
+			this.count = count;
+		}
+	}
+	
+	/**
+	 * What's remembered during a refresh. A new one is used for each 
+	 * refresh.
+	 */
+	public static final class RefreshCache {
+		
+		private final RefreshCache previous;
+		
+		RefreshCache(RefreshCache previous) {
+			this.previous = previous;
+		}
+		
+		final Map<String, Class<?>> typesByName = 
+				new ConcurrentHashMap<String, Class<?>>();
+		
+		final Map<Class<?>, Candidates> candidatesByType = 
+				new ConcurrentHashMap<Class<?>, Candidates>();
+		
+		final Set<String> misses = ConcurrentHashMap.newKeySet();
+		
+		void missed(String name) {
+			if (misses.size() >= MAX_MISSES) {
+				misses.clear();
+			}
+			misses.add(name);
+		}
+	}
+	
+	/**
+	 * Thrown when a bean is already known to be missing. Creating the 
+	 * stack trace is most of the cost of an exception and nothing 
+	 * more is learnt from it the second time.
+	 */
+	static class CachedMissException extends NoSuchBeanDefinitionException {
+		
+		private static final long serialVersionUID = 2021020100L;
+		
+		CachedMissException(String name) {
+			super(name);
+		}
+		
+		CachedMissException(Class<?> type, String message) {
+			super(type, message);
+		}
+		
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
 }
@@ -0,0 +1,215 @@
+package org.oddjob.spring;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.registry.BeanDirectory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.NoUniqueBeanDefinitionException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+
+/**
+ * An {@link ObjectProvider} for the beans of a type in Oddjob's
+ * {@link BeanDirectory}. Nothing is looked up until the provider is
+ * asked for a bean, and then the directory is asked again each time,
+ * so beans that Oddjob registers after the provider is injected are
+ * found.
+ * <p>
+ * Candidates are visited in the order the directory gives them and
+ * looking for a single bean stops as soon as a second one is found.
+ *
+ * @see OddjobBeanFactory#getBeanProvider(ResolvableType)
+ */
+public class OddjobBeanProvider<T> implements ObjectProvider<T> {
+
+	/** The session. */
+	private final ArooaSession session;
+
+	/** The type required. */
+	private final ResolvableType requiredType;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param session The session with the bean directory.
+	 * @param requiredType The type of the beans to provide.
+	 */
+	public OddjobBeanProvider(ArooaSession session, ResolvableType requiredType) {
+		this.session = session;
+		this.requiredType = requiredType;
+	}
+
+	/**
+	 * Arguments can't be used to create a bean in Oddjob so these are
+	 * ignored and this is the same as {@link #getObject()}.
+	 *
+	 * @param args Ignored.
+	 */
+	@Override
+	public T getObject(Object... args) throws BeansException {
+		return getObject();
+	}
+
+	/**
+	 * Get the one bean of the required type.
+	 *
+	 * @return The bean. Never null.
+	 *
+	 * @throws NoSuchBeanDefinitionException If there isn't one.
+	 * @throws NoUniqueBeanDefinitionException If there is more than one.
+	 */
+	@Override
+	public T getObject() throws BeansException {
+		T bean = getIfAvailable();
+		if (bean == null) {
+			throw new NoSuchBeanDefinitionException(requiredType);
+		}
+		return bean;
+	}
+
+	/**
+	 * Get the bean of the required type if there is one.
+	 *
+	 * @return The bean or null if there isn't one.
+	 *
+	 * @throws NoUniqueBeanDefinitionException If there is more than one.
+	 */
+	@Override
+	public T getIfAvailable() throws BeansException {
+		Iterator<T> it = iterator();
+		if (!it.hasNext()) {
+			return null;
+		}
+		T bean = it.next();
+		if (it.hasNext()) {
+			throw new NoUniqueBeanDefinitionException(requiredType.toClass(),
+					2, "More than one bean of type " + requiredType +
+					" in Oddjob.");
+		}
+		return bean;
+	}
+
+	/**
+	 * Get the bean of the required type if it is the only one.
+	 *
+	 * @return The bean, or null if there isn't exactly one.
+	 */
+	@Override
+	public T getIfUnique() throws BeansException {
+		Iterator<T> it = iterator();
+		if (!it.hasNext()) {
+			return null;
+		}
+		T bean = it.next();
+		return it.hasNext() ? null : bean;
+	}
+
+	/**
+	 * Iterate over the beans of the required type. Each bean is found as
+	 * the iteration reaches it.
+	 *
+	 * @return An iterator. Never null.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new TypeMatchIterator<T>(directoryIterator(), requiredType);
+	}
+
+	/**
+	 * Provide a sequential stream of the beans of the required type in
+	 * the order the directory gives them.
+	 *
+	 * @return A stream. Never null.
+	 */
+	@Override
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+				iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Provide a stream of the beans of the required type sorted by
+	 * {@link org.springframework.core.Ordered} and
+	 * {@link org.springframework.core.annotation.Order}. Beans with the
+	 * same order stay in the order the directory gives them.
+	 *
+	 * @return A stream. Never null.
+	 */
+	@Override
+	public Stream<T> orderedStream() {
+		return stream().sorted(AnnotationAwareOrderComparator.INSTANCE);
+	}
+
+	/**
+	 * Getter for required type.
+	 *
+	 * @return The type of the beans provided.
+	 */
+	public ResolvableType getRequiredType() {
+		return requiredType;
+	}
+
+	private Iterator<?> directoryIterator() {
+		Iterable<?> all = session.getBeanRegistry().getAllByType(
+				requiredType.toClass());
+		if (all == null) {
+			return Collections.emptyIterator();
+		}
+		return all.iterator();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " for " + requiredType;
+	}
+
+	/**
+	 * Skips beans of the raw type that don't match the generics of the
+	 * required type.
+	 */
+	static class TypeMatchIterator<T> implements Iterator<T> {
+
+		private final Iterator<?> candidates;
+
+		private final ResolvableType requiredType;
+
+		private T next;
+
+		TypeMatchIterator(Iterator<?> candidates,
+				ResolvableType requiredType) {
+			this.candidates = candidates;
+			this.requiredType = requiredType;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean hasNext() {
+			while (next == null && candidates.hasNext()) {
+				Object candidate = candidates.next();
+				if (candidate != null && requiredType.isInstance(candidate)) {
+					next = (T) candidate;
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T bean = next;
+			next = null;
+			return bean;
+		}
+	}
+}
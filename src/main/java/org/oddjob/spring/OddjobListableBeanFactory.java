@@ -0,0 +1,649 @@
+package org.oddjob.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanCurrentlyInCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.SmartFactoryBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.metrics.StartupStep;
+
+/**
+ * The {@link DefaultListableBeanFactory} used by the Spring components.
+ * <p>
+ * If <code>instantiationThreads</code> is more than 1, the non-lazy
+ * singletons are created in parallel when the application context is
+ * refreshed. A graph is built from the dependencies that can be seen
+ * in the bean definitions (depends-on, bean references and factory beans)
+ * and a bean is only created once the beans it depends on have been.
+ * Beans that depend on each other in a cycle are created together on one
+ * thread in the order they were defined.
+ * <p>
+ * Spring normally creates singletons while holding a single lock. While
+ * singletons are being created in parallel this factory instead locks
+ * each singleton as it is created. If a bean depends on another in a way
+ * that can't be seen in its definition, for instance by being autowired,
+ * and the two form a cycle, creation may block. Rather than block forever
+ * a {@link BeanCurrentlyInCreationException} is thrown once
+ * <code>lockTimeout</code> has elapsed.
+ * <p>
+ * The factory also keeps an index from each singleton instance to its
+ * bean name, so that the name of a bean can be found from the bean by
+ * identity. The index is kept up to date as singletons are added and
+ * destroyed, and is emptied when the factory's singletons are destroyed,
+ * so it doesn't keep beans alive after the context closes.
+ * <p>
+ * Resolving the definitions of some beans may be left until the bean is
+ * first created, see {@link #deferResolution(Collection, Consumer)}.
+ *
+ * @see SpringBase#setInstantiationThreads(int)
+ */
+public class OddjobListableBeanFactory extends DefaultListableBeanFactory {
+
+	private static final Logger logger = LoggerFactory.getLogger(
+			OddjobListableBeanFactory.class);
+
+	private static final AtomicInteger instanceCount = new AtomicInteger();
+
+	/** Threads used to create singletons. Less than 2 means sequentially. */
+	private int instantiationThreads;
+
+	/** Milliseconds to wait for a singleton being created by another thread. */
+	private long lockTimeout = 60000L;
+
+	/** Locks for each singleton while creating in parallel. */
+	private final ConcurrentMap<String, ReentrantLock> creationLocks =
+			new ConcurrentHashMap<String, ReentrantLock>();
+
+	/** True while singletons are being created in parallel. */
+	private volatile boolean parallel;
+
+	/** What resolves each definition that is resolved when first created,
+	 * by bean name. */
+	private final ConcurrentMap<String, Consumer<String>> deferred =
+			new ConcurrentHashMap<String, Consumer<String>>();
+
+	/** Bean names by singleton, by identity. */
+	private final Map<Object, String> namesBySingleton =
+			Collections.synchronizedMap(new IdentityHashMap<Object, String>());
+
+	/**
+	 * Create a new instance.
+	 */
+	public OddjobListableBeanFactory() {
+	}
+
+	/**
+	 * Create a new instance with the given parent.
+	 *
+	 * @param parentBeanFactory The parent bean factory.
+	 */
+	public OddjobListableBeanFactory(BeanFactory parentBeanFactory) {
+		super(parentBeanFactory);
+	}
+
+	@Override
+	public void preInstantiateSingletons() throws BeansException {
+		if (instantiationThreads < 2) {
+			super.preInstantiateSingletons();
+			return;
+		}
+
+		List<String> beanNames = Arrays.asList(getBeanDefinitionNames());
+
+		Set<String> eager = new LinkedHashSet<String>();
+		for (String beanName : beanNames) {
+			RootBeanDefinition bd = getMergedLocalBeanDefinition(beanName);
+			if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
+				eager.add(beanName);
+			}
+		}
+
+		Map<String, Set<String>> graph = new HashMap<String, Set<String>>();
+		for (String beanName : eager) {
+			Set<String> dependencies = new LinkedHashSet<String>();
+			collectDependencies(getMergedLocalBeanDefinition(beanName),
+					dependencies);
+			Set<String> eagerDependencies = new LinkedHashSet<String>();
+			for (String dependency : dependencies) {
+				String canonical = canonicalName(dependency);
+				if (eager.contains(canonical) && !canonical.equals(beanName)) {
+					eagerDependencies.add(canonical);
+				}
+			}
+			graph.put(beanName, eagerDependencies);
+		}
+
+		List<List<String>> components = new StronglyConnected(
+				eager, graph).components();
+
+		logger.debug("Creating " + eager.size() + " singletons in " +
+				components.size() + " groups on " + instantiationThreads +
+				" threads.");
+
+		final ClassLoader contextClassLoader =
+				Thread.currentThread().getContextClassLoader();
+		final String threadName = "BeanFactory-" + instanceCount.incrementAndGet();
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+				instantiationThreads, new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r,
+								threadName + "-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						thread.setContextClassLoader(contextClassLoader);
+						return thread;
+					}
+				});
+
+		parallel = true;
+		try {
+			Map<String, CompletableFuture<Void>> created =
+					new HashMap<String, CompletableFuture<Void>>();
+			List<CompletableFuture<Void>> all =
+					new ArrayList<CompletableFuture<Void>>();
+
+			// Components come out dependencies first.
+			for (final List<String> component : components) {
+
+				List<CompletableFuture<Void>> before =
+						new ArrayList<CompletableFuture<Void>>();
+				for (String beanName : component) {
+					for (String dependency : graph.get(beanName)) {
+						CompletableFuture<Void> future = created.get(dependency);
+						if (future != null) {
+							before.add(future);
+						}
+					}
+				}
+
+				CompletableFuture<Void> future = CompletableFuture.allOf(
+						before.toArray(new CompletableFuture<?>[before.size()]))
+						.thenRunAsync(new Runnable() {
+							@Override
+							public void run() {
+								for (String beanName : component) {
+									instantiate(beanName);
+								}
+							}
+						}, executor);
+
+				for (String beanName : component) {
+					created.put(beanName, future);
+				}
+				all.add(future);
+			}
+
+			try {
+				CompletableFuture.allOf(
+						all.toArray(new CompletableFuture<?>[all.size()])).join();
+			}
+			catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof BeansException) {
+					throw (BeansException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new BeanCreationException(
+						"Failed creating singletons.", cause);
+			}
+		}
+		finally {
+			parallel = false;
+			creationLocks.clear();
+			executor.shutdown();
+		}
+
+		// Trigger post-initialization callback as Spring does.
+		for (String beanName : beanNames) {
+			Object singletonInstance = getSingleton(beanName);
+			if (singletonInstance instanceof SmartInitializingSingleton) {
+				StartupStep smartInitialize = getApplicationStartup().start(
+						"spring.beans.smart-initialize")
+						.tag("beanName", beanName);
+				((SmartInitializingSingleton) singletonInstance)
+						.afterSingletonsInstantiated();
+				smartInitialize.end();
+			}
+		}
+	}
+
+	/**
+	 * Create a single non-lazy singleton as Spring's pre-instantiation
+	 * would.
+	 *
+	 * @param beanName The name of the bean.
+	 */
+	protected void instantiate(String beanName) {
+		if (isFactoryBean(beanName)) {
+			Object bean = getBean(FACTORY_BEAN_PREFIX + beanName);
+			if (bean instanceof SmartFactoryBean &&
+					((SmartFactoryBean<?>) bean).isEagerInit()) {
+				getBean(beanName);
+			}
+		}
+		else {
+			getBean(beanName);
+		}
+	}
+
+	/**
+	 * Collect the names of the beans a definition refers to.
+	 *
+	 * @param definition The definition.
+	 * @param dependencies The names collected so far.
+	 */
+	protected void collectDependencies(BeanDefinition definition,
+			Set<String> dependencies) {
+		String[] dependsOn = definition.getDependsOn();
+		if (dependsOn != null) {
+			dependencies.addAll(Arrays.asList(dependsOn));
+		}
+		if (definition.getFactoryBeanName() != null) {
+			dependencies.add(definition.getFactoryBeanName());
+		}
+		for (PropertyValue pv :
+				definition.getPropertyValues().getPropertyValues()) {
+			collectReferences(pv.getValue(), dependencies);
+		}
+		for (ValueHolder holder : definition.getConstructorArgumentValues()
+				.getIndexedArgumentValues().values()) {
+			collectReferences(holder.getValue(), dependencies);
+		}
+		for (ValueHolder holder : definition.getConstructorArgumentValues()
+				.getGenericArgumentValues()) {
+			collectReferences(holder.getValue(), dependencies);
+		}
+	}
+
+	private void collectReferences(Object value, Set<String> dependencies) {
+		if (value instanceof RuntimeBeanReference) {
+			RuntimeBeanReference reference = (RuntimeBeanReference) value;
+			if (!reference.isToParent()) {
+				dependencies.add(reference.getBeanName());
+			}
+		}
+		else if (value instanceof BeanDefinitionHolder) {
+			collectDependencies(
+					((BeanDefinitionHolder) value).getBeanDefinition(),
+					dependencies);
+		}
+		else if (value instanceof BeanDefinition) {
+			collectDependencies((BeanDefinition) value, dependencies);
+		}
+		else if (value instanceof Collection) {
+			for (Object element : (Collection<?>) value) {
+				collectReferences(element, dependencies);
+			}
+		}
+		else if (value instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				collectReferences(entry.getKey(), dependencies);
+				collectReferences(entry.getValue(), dependencies);
+			}
+		}
+	}
+
+	/**
+	 * While creating in parallel, create the singleton holding a lock for
+	 * just this bean rather than Spring's lock for all singletons.
+	 * <p>
+	 * Holding Spring's lock would create the singletons one at a time, so
+	 * this relies instead on the following, which hold for Spring 5.3:
+	 * <ul>
+	 * <li>Each bean is created at most once, because every singleton 
+	 * created while creating in parallel is created through this method,
+	 * which checks for and creates the singleton holding the bean's own 
+	 * lock.</li>
+	 * <li>The registry state that creating a bean changes is safe without
+	 * Spring's lock. The singletons, early singletons and the names of
+	 * beans in creation are held in concurrent collections, and adding a 
+	 * singleton or singleton factory, and registering disposable beans 
+	 * and dependent beans, synchronize themselves.</li>
+	 * <li>A half created bean is only seen by the thread creating it, as
+	 * an early reference to break a cycle as Spring would. Other threads
+	 * wait for it, see {@link #getSingleton(String, boolean)}.</li>
+	 * </ul>
+	 * Exceptions Spring would add as suppressed to a failure creating a
+	 * bean are not collected.
+	 */
+	@Override
+	public Object getSingleton(String beanName,
+			ObjectFactory<?> singletonFactory) {
+		if (!parallel) {
+			return super.getSingleton(beanName, singletonFactory);
+		}
+
+		ReentrantLock lock = creationLocks.computeIfAbsent(beanName,
+				k -> new ReentrantLock());
+		acquire(lock, beanName);
+		try {
+			Object singletonObject = super.getSingleton(beanName, false);
+			if (singletonObject != null) {
+				return singletonObject;
+			}
+			beforeSingletonCreation(beanName);
+			try {
+				singletonObject = singletonFactory.getObject();
+			}
+			catch (IllegalStateException e) {
+				// Has the singleton object implicitly appeared in the meantime?
+				singletonObject = super.getSingleton(beanName, false);
+				if (singletonObject == null) {
+					throw e;
+				}
+				return singletonObject;
+			}
+			finally {
+				afterSingletonCreation(beanName);
+			}
+			addSingleton(beanName, singletonObject);
+			return singletonObject;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * While creating in parallel, wait for a singleton that is being
+	 * created on another thread rather than seeing an early reference to
+	 * it.
+	 */
+	@Override
+	protected Object getSingleton(String beanName, boolean allowEarlyReference) {
+		if (parallel) {
+			ReentrantLock lock = creationLocks.get(beanName);
+			if (lock != null && lock.isLocked() && !lock.isHeldByCurrentThread()) {
+				acquire(lock, beanName);
+				lock.unlock();
+			}
+		}
+		return super.getSingleton(beanName, allowEarlyReference);
+	}
+
+	private void acquire(ReentrantLock lock, String beanName) {
+		try {
+			if (!lock.tryLock(lockTimeout, TimeUnit.MILLISECONDS)) {
+				throw new BeanCurrentlyInCreationException(beanName,
+						"Timed out after " + lockTimeout +
+						"ms waiting for another thread to create it. Is there a " +
+						"circular dependency that isn't in the bean definitions?");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BeanCreationException(beanName,
+					"Interrupted waiting for another thread to create it.");
+		}
+	}
+
+	/**
+	 * Leave resolving the definitions of the named beans until they are
+	 * first created. Just before a bean is created for the first time the 
+	 * resolver is given its name so that it may change the registered 
+	 * definition, and the definition is then merged again. A definition 
+	 * that is registered again or removed is no longer deferred.
+	 * <p>
+	 * Each bean keeps the resolver it was deferred with, so more than one
+	 * post processor may defer resolving different beans. A bean may only
+	 * be deferred once.
+	 *
+	 * @param beanNames The names of the beans.
+	 * @param resolver Resolves the definition of a bean.
+	 *
+	 * @throws IllegalStateException If resolving any of the beans is 
+	 * already deferred. None of the beans are deferred if so.
+	 */
+	public void deferResolution(Collection<String> beanNames,
+			Consumer<String> resolver) {
+		synchronized (deferred) {
+			for (String beanName : beanNames) {
+				if (deferred.containsKey(beanName)) {
+					throw new IllegalStateException("Resolving bean [" + 
+							beanName + "] is already deferred.");
+				}
+			}
+			for (String beanName : beanNames) {
+				deferred.put(beanName, resolver);
+			}
+		}
+	}
+
+	/**
+	 * Is resolving the definition of a bean deferred until it is created.
+	 *
+	 * @param beanName The bean name.
+	 *
+	 * @return true if the definition hasn't been resolved yet.
+	 */
+	public boolean isDeferred(String beanName) {
+		return deferred.containsKey(beanName);
+	}
+
+	@Override
+	protected Object createBean(String beanName, RootBeanDefinition mbd,
+			Object[] args) throws BeanCreationException {
+		if (deferred.containsKey(beanName)) {
+			synchronized (deferred) {
+				Consumer<String> resolver = deferred.get(beanName);
+				if (resolver != null) {
+					resolver.accept(beanName);
+					clearMergedBeanDefinition(beanName);
+					deferred.remove(beanName);
+				}
+			}
+			mbd = getMergedLocalBeanDefinition(beanName);
+		}
+		return super.createBean(beanName, mbd, args);
+	}
+
+	@Override
+	public void registerBeanDefinition(String beanName,
+			BeanDefinition beanDefinition) {
+		super.registerBeanDefinition(beanName, beanDefinition);
+		deferred.remove(beanName);
+	}
+
+	@Override
+	public void removeBeanDefinition(String beanName) {
+		super.removeBeanDefinition(beanName);
+		deferred.remove(beanName);
+	}
+
+	@Override
+	protected void addSingleton(String beanName, Object singletonObject) {
+		super.addSingleton(beanName, singletonObject);
+		namesBySingleton.put(singletonObject, beanName);
+	}
+
+	@Override
+	protected void removeSingleton(String beanName) {
+		Object singletonObject = super.getSingleton(beanName, false);
+		super.removeSingleton(beanName);
+		if (singletonObject != null) {
+			namesBySingleton.remove(singletonObject, beanName);
+		}
+	}
+
+	@Override
+	protected void clearSingletonCache() {
+		super.clearSingletonCache();
+		namesBySingleton.clear();
+	}
+
+	/**
+	 * Find the name of a singleton.
+	 *
+	 * @param singletonObject The singleton.
+	 *
+	 * @return The name it was registered with, or null if it isn't a
+	 * singleton in this factory.
+	 */
+	public String getBeanNameFor(Object singletonObject) {
+		if (singletonObject == null) {
+			return null;
+		}
+		return namesBySingleton.get(singletonObject);
+	}
+
+	/**
+	 * Getter for instantiation threads.
+	 *
+	 * @return The number of threads used to create singletons.
+	 */
+	public int getInstantiationThreads() {
+		return instantiationThreads;
+	}
+
+	/**
+	 * Setter for instantiation threads.
+	 *
+	 * @param instantiationThreads The number of threads used to create
+	 * singletons. Less than 2 means singletons are created one after
+	 * another as Spring normally does.
+	 */
+	public void setInstantiationThreads(int instantiationThreads) {
+		this.instantiationThreads = instantiationThreads;
+	}
+
+	/**
+	 * Getter for lock timeout.
+	 *
+	 * @return Milliseconds to wait for a singleton being created by
+	 * another thread.
+	 */
+	public long getLockTimeout() {
+		return lockTimeout;
+	}
+
+	/**
+	 * Setter for lock timeout.
+	 *
+	 * @param lockTimeout Milliseconds to wait for a singleton being created
+	 * by another thread.
+	 */
+	public void setLockTimeout(long lockTimeout) {
+		this.lockTimeout = lockTimeout;
+	}
+
+	/**
+	 * Finds strongly connected components with Tarjan's algorithm.
+	 * Components are provided with the beans a component depends on
+	 * before it.
+	 */
+	static class StronglyConnected {
+
+		private final Collection<String> nodes;
+
+		private final Map<String, Set<String>> edges;
+
+		private final Map<String, Integer> position = new HashMap<String, Integer>();
+
+		private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+		private final Map<String, Integer> lowLink = new HashMap<String, Integer>();
+
+		private final List<String> stack = new ArrayList<String>();
+
+		private final Set<String> onStack = new LinkedHashSet<String>();
+
+		private final List<List<String>> components = new ArrayList<List<String>>();
+
+		private int next;
+
+		StronglyConnected(Collection<String> nodes, Map<String, Set<String>> edges) {
+			this.nodes = nodes;
+			this.edges = edges;
+		}
+
+		List<List<String>> components() {
+			for (String node : nodes) {
+				position.put(node, position.size());
+			}
+			for (String node : nodes) {
+				if (!index.containsKey(node)) {
+					connect(node);
+				}
+			}
+			return components;
+		}
+
+		private void connect(String node) {
+			index.put(node, next);
+			lowLink.put(node, next);
+			++next;
+			stack.add(node);
+			onStack.add(node);
+
+			for (String successor : edges.get(node)) {
+				if (!index.containsKey(successor)) {
+					connect(successor);
+					lowLink.put(node, Math.min(lowLink.get(node),
+							lowLink.get(successor)));
+				}
+				else if (onStack.contains(successor)) {
+					lowLink.put(node, Math.min(lowLink.get(node),
+							index.get(successor)));
+				}
+			}
+
+			if (lowLink.get(node).equals(index.get(node))) {
+				List<String> component = new ArrayList<String>();
+				String member;
+				do {
+					member = stack.remove(stack.size() - 1);
+					onStack.remove(member);
+					component.add(member);
+				}
+				while (!member.equals(node));
+
+				// Keep definition order within a component.
+				if (component.size() > 1) {
+					component.sort((a, b) -> Integer.compare(
+							position.get(a), position.get(b)));
+				}
+				components.add(component);
+			}
+		}
+	}
+}
@@ -1,8 +1,20 @@
 package org.oddjob.spring;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import org.oddjob.arooa.ArooaSession;
 import org.oddjob.arooa.convert.ArooaConversionException;
-import org.oddjob.arooa.runtime.ExpressionParser;
 import org.oddjob.arooa.runtime.ParsedExpression;
 import org.oddjob.arooa.runtime.RetainUnexpandedStrings;
 import org.oddjob.arooa.runtime.SubstituationPolicySession;
@@ -14,6 +26,7 @@ import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.BeanDefinitionVisitor;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.core.metrics.StartupStep;
 import org.springframework.util.StringValueResolver;
 
 /**
@@ -42,6 +55,19 @@ import org.springframework.util.StringValueResolver;
  * isn't constant despite the fact that favourite.pizza could not be 
  * resolved.</li>
  * </ul>
+ * <p>
+ * A context with very many bean definitions may have them visited in 
+ * parallel, see {@link #setParallel(boolean)}. Resolving Oddjob 
+ * expressions must then be safe from several threads at once, which it is
+ * for properties and the bean registry as long as Oddjob isn't changing
+ * them at the same time.
+ * <p>
+ * Resolving the definitions of lazy and non-singleton beans may also be
+ * left until they are created, see {@link #setDeferResolution(boolean)}.
+ * <p>
+ * If bindings are recorded, see {@link #setRecordBindings(boolean)}, the
+ * definitions that used an expression whose value has since changed can 
+ * be resolved again with {@link #rebindDefinitions()}.
  * 
  * 
  * @author rob
@@ -52,15 +78,45 @@ public class OddjobPropertyConfigurer implements BeanFactoryPostProcessor {
 	private static final Logger logger = LoggerFactory.getLogger(
 			OddjobPropertyConfigurer.class);
 	
+	/** The name of the startup step for resolving properties. */
+	public static final String RESOLVE_STEP = "oddjob.properties.resolve";
+	
+	/** Fewer bean definitions than this are always visited one after another. */
+	public static final int PARALLEL_THRESHOLD = 256;
+	
+	/** The session from Oddjob. */
+	private final ArooaSession oddjobSession;
+	
 	/** The Oddjob session used to resolve property values. */
 	private final ArooaSession session;
 	
+	/** Parsed expressions shared with other contexts in the session. */
+	private final ParsedExpressionCache expressions;
+	
+	/** The expressions resolved so far, and what they resolved to. */
+	private final Map<String, String> resolvedValues = 
+			Collections.synchronizedMap(new LinkedHashMap<String, String>());
+	
+	/** Resolve the properties in bean definitions. */
+	private volatile boolean visitDefinitions = true;
+	
+	/** Resolve lazy and non-singleton definitions when they are created. */
+	private volatile boolean deferResolution;
+	
+	/** Records the expressions each definition used. Null if not recording. */
+	private volatile PropertyBindings bindings;
+	
+	/** Visit bean definitions in parallel. */
+	private volatile boolean parallel;
+	
 	/**
 	 * Constructor.
 	 * 
 	 * @param session The session from Oddjob.
 	 */
 	public OddjobPropertyConfigurer(ArooaSession session) {
+		this.oddjobSession = session;
+		this.expressions = ParsedExpressionCache.forSession(session);
 		this.session = new SubstituationPolicySession(
 				session, new RetainUnexpandedStrings());
 	}
@@ -68,19 +124,51 @@ public class OddjobPropertyConfigurer implements BeanFactoryPostProcessor {
 	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactoryToProcess)
 			throws BeansException {
 		
+		StartupStep resolve = beanFactoryToProcess.getApplicationStartup()
+				.start(RESOLVE_STEP);
+		try {
+			doProcessProperties(beanFactoryToProcess);
+		}
+		finally {
+			resolve.tag("resolved", String.valueOf(resolvedValues.size()));
+			resolve.end();
+		}
+	}
+	
+	/**
+	 * Resolve the properties in the bean definitions and aliases, and 
+	 * register the resolver for embedded values.
+	 * 
+	 * @param beanFactoryToProcess The bean factory.
+	 */
+	protected void doProcessProperties(
+			ConfigurableListableBeanFactory beanFactoryToProcess) {
+		
 		StringValueResolver valueResolver = new BeanDirectoryResolver();
 
-		BeanDefinitionVisitor visitor = new BeanDefinitionVisitor(
-				valueResolver);
+		String[] beanNames = visitDefinitions ? 
+				beanFactoryToProcess.getBeanDefinitionNames() : new String[0];
 		
-		String[] beanNames = beanFactoryToProcess.getBeanDefinitionNames();
-		for (String beanName : beanNames) {
-
-			BeanDefinition bd = beanFactoryToProcess.getBeanDefinition(beanName);
-			try {
-				visitor.visitBeanDefinition(bd);
-			} catch (BeanDefinitionStoreException ex) {
-				throw new BeanDefinitionStoreException(bd.getResourceDescription(), beanName, ex.getMessage());
+		if (deferResolution && 
+				beanFactoryToProcess instanceof OddjobListableBeanFactory) {
+			beanNames = defer((OddjobListableBeanFactory) beanFactoryToProcess,
+					beanNames);
+		}
+		
+		if (parallel && beanNames.length >= PARALLEL_THRESHOLD) {
+			visitInParallel(beanFactoryToProcess, beanNames, 
+					ForkJoinPool.commonPool());
+		}
+		else {
+			BeanDirectoryResolver resolver = new BeanDirectoryResolver();
+			
+			BeanDefinitionVisitor visitor = new BeanDefinitionVisitor(
+					resolver);
+			
+			for (String beanName : beanNames) {
+	
+				visit(visitor, resolver, beanName, 
+						beanFactoryToProcess.getBeanDefinition(beanName));
 			}
 		}
 		
@@ -91,38 +179,467 @@ public class OddjobPropertyConfigurer implements BeanFactoryPostProcessor {
 		beanFactoryToProcess.addEmbeddedValueResolver(valueResolver);
 	}
 	
+	/**
+	 * Leave the definitions of lazy and non-singleton beans for the bean 
+	 * factory to have resolved when it first creates them. Abstract 
+	 * definitions, definitions that are the parent of another, and 
+	 * definitions with a placeholder in their class name, scope, parent 
+	 * name, factory bean name or factory method name are always resolved 
+	 * now because the factory needs these before it creates the bean.
+	 * 
+	 * @param beanFactory The bean factory.
+	 * @param beanNames The names of all the definitions.
+	 * 
+	 * @return The names of the definitions to resolve now.
+	 */
+	protected String[] defer(final OddjobListableBeanFactory beanFactory,
+			String[] beanNames) {
+		
+		Set<String> parents = new HashSet<String>();
+		for (String beanName : beanNames) {
+			String parentName = beanFactory.getBeanDefinition(
+					beanName).getParentName();
+			if (parentName != null) {
+				parents.add(beanFactory.canonicalName(parentName));
+			}
+		}
+		
+		List<String> now = new ArrayList<String>();
+		List<String> later = new ArrayList<String>();
+		
+		for (String beanName : beanNames) {
+			BeanDefinition bd = beanFactory.getBeanDefinition(beanName);
+			if (!bd.isAbstract() && (bd.isLazyInit() || !bd.isSingleton()) &&
+					!parents.contains(beanName) &&
+					!hasPlaceholder(bd.getBeanClassName()) &&
+					!hasPlaceholder(bd.getScope()) &&
+					!hasPlaceholder(bd.getParentName()) &&
+					!hasPlaceholder(bd.getFactoryBeanName()) &&
+					!hasPlaceholder(bd.getFactoryMethodName())) {
+				later.add(beanName);
+			}
+			else {
+				now.add(beanName);
+			}
+		}
+		
+		if (!later.isEmpty()) {
+			logger.debug("Deferring resolving " + later.size() + 
+					" lazy or non-singleton bean definitions.");
+			
+			beanFactory.deferResolution(later, beanName -> {
+				BeanDirectoryResolver resolver = new BeanDirectoryResolver();
+				visit(new BeanDefinitionVisitor(resolver), resolver, beanName, 
+						beanFactory.getBeanDefinition(beanName));
+			});
+		}
+		
+		return now.toArray(new String[now.size()]);
+	}
+	
+	private static boolean hasPlaceholder(String value) {
+		return value != null && ParsedExpressionCache.hasPlaceholder(value);
+	}
+	
+	/**
+	 * Resolve a single bean definition, recording the expressions it uses
+	 * and a copy of it as it was if bindings are being recorded.
+	 * 
+	 * @param visitor The visitor.
+	 * @param resolver The resolver the visitor uses.
+	 * @param beanName The bean name.
+	 * @param bd The definition.
+	 * 
+	 * @throws BeanDefinitionStoreException If the definition can't be 
+	 * resolved.
+	 */
+	void visit(BeanDefinitionVisitor visitor, 
+			BeanDirectoryResolver resolver, String beanName, BeanDefinition bd) 
+	throws BeanDefinitionStoreException {
+		
+		PropertyBindings bindings = this.bindings;
+		
+		BeanDefinition original = null;
+		Set<String> used = null;
+		if (bindings != null) {
+			original = PropertyBindings.copy(bd);
+			used = new LinkedHashSet<String>();
+		}
+		
+		resolver.used = used;
+		try {
+			visitor.visitBeanDefinition(bd);
+		} catch (BeanDefinitionStoreException ex) {
+			throw new BeanDefinitionStoreException(bd.getResourceDescription(), beanName, ex.getMessage());
+		}
+		finally {
+			resolver.used = null;
+		}
+		
+		if (bindings != null) {
+			bindings.bind(beanName, original, used);
+		}
+	}
+	
+	/**
+	 * Resolve again the definitions that used an expression whose value 
+	 * has changed since it was resolved. The definitions are resolved 
+	 * from copies of how they were before they were first resolved, and 
+	 * are not registered with any bean factory.
+	 * 
+	 * @return The new definitions by bean name. Empty if no values used 
+	 * by definitions have changed.
+	 * 
+	 * @throws IllegalStateException If bindings aren't being recorded.
+	 * 
+	 * @see BeanDefinitionReloader#redefine(Map, java.util.Collection)
+	 */
+	public Map<String, BeanDefinition> rebindDefinitions() {
+		
+		PropertyBindings bindings = this.bindings;
+		if (bindings == null) {
+			throw new IllegalStateException("Bindings are not being recorded.");
+		}
+		
+		Map<String, String> previous = getResolvedValues();
+		
+		Set<String> changed = new LinkedHashSet<String>();
+		for (String expression : bindings.getExpressions()) {
+			String now = resolve(expression);
+			if (!Objects.equals(now, previous.get(expression))) {
+				logger.debug("Value of [" + expression + "] has changed from [" + 
+						previous.get(expression) + "] to [" + now + "]");
+				changed.add(expression);
+			}
+		}
+		
+		Map<String, BeanDefinition> definitions = 
+				new LinkedHashMap<String, BeanDefinition>();
+		if (changed.isEmpty()) {
+			return definitions;
+		}
+		
+		BeanDirectoryResolver resolver = new BeanDirectoryResolver();
+		BeanDefinitionVisitor visitor = new BeanDefinitionVisitor(resolver);
+		
+		for (String beanName : bindings.beansUsing(changed)) {
+			BeanDefinition definition = bindings.original(beanName);
+			visit(visitor, resolver, beanName, definition);
+			definitions.put(beanName, definition);
+		}
+		
+		return definitions;
+	}
+	
+	/**
+	 * Visit the bean definitions in parallel. The names are split into 
+	 * ranges and each range is visited by a visitor of its own that 
+	 * records what it resolves separately. These are then combined in the
+	 * order of the names, so the resolved values are the same as if the
+	 * definitions had been visited one after another. Every definition
+	 * is visited even if some fail. If any fail, the failure of the first
+	 * in order is thrown with the others suppressed.
+	 * 
+	 * @param beanFactoryToProcess The bean factory.
+	 * @param beanNames The names of the definitions to visit.
+	 * @param pool The pool to visit them on.
+	 */
+	protected void visitInParallel(
+			final ConfigurableListableBeanFactory beanFactoryToProcess,
+			final String[] beanNames, ForkJoinPool pool) {
+		
+		int ranges = Math.min(pool.getParallelism() * 4, beanNames.length);
+		
+		List<Future<Visited>> futures = new ArrayList<Future<Visited>>();
+		
+		for (int i = 0; i < ranges; ++i) {
+			final int from = beanNames.length * i / ranges;
+			final int to = beanNames.length * (i + 1) / ranges;
+			futures.add(pool.submit(() -> {
+				Visited visited = new Visited();
+				BeanDirectoryResolver resolver = 
+						new BeanDirectoryResolver(visited.resolvedValues);
+				BeanDefinitionVisitor visitor = new BeanDefinitionVisitor(
+						resolver);
+				for (int j = from; j < to; ++j) {
+					try {
+						visit(visitor, resolver, beanNames[j], 
+								beanFactoryToProcess.getBeanDefinition(
+										beanNames[j]));
+					} catch (BeanDefinitionStoreException ex) {
+						visited.failures.add(ex);
+					}
+				}
+				return visited;
+			}));
+		}
+		
+		List<BeanDefinitionStoreException> failures = 
+				new ArrayList<BeanDefinitionStoreException>();
+		
+		for (Future<Visited> future : futures) {
+			Visited visited;
+			try {
+				visited = future.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BeanDefinitionStoreException(
+						"Interrupted resolving properties.", e);
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new BeanDefinitionStoreException(
+						"Failed resolving properties.", cause);
+			}
+			synchronized (resolvedValues) {
+				for (Map.Entry<String, String> entry : 
+						visited.resolvedValues.entrySet()) {
+					if (!resolvedValues.containsKey(entry.getKey())) {
+						resolvedValues.put(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+			failures.addAll(visited.failures);
+		}
+		
+		logger.debug("Visited " + beanNames.length + " bean definitions in " + 
+				ranges + " parallel ranges.");
+		
+		if (!failures.isEmpty()) {
+			BeanDefinitionStoreException first = failures.get(0);
+			for (int i = 1; i < failures.size(); ++i) {
+				first.addSuppressed(failures.get(i));
+			}
+			throw first;
+		}
+	}
+	
+	/**
+	 * Create a property source that resolves properties from the same 
+	 * session as this configurer, recording what it resolves with the
+	 * values this configurer has resolved.
+	 * 
+	 * @return A new property source.
+	 */
+	public OddjobPropertySource createPropertySource() {
+		return new OddjobPropertySource(oddjobSession, resolvedValues);
+	}
+	
+	/**
+	 * Getter for visit definitions.
+	 * 
+	 * @return true if properties in bean definitions are resolved.
+	 */
+	public boolean isVisitDefinitions() {
+		return visitDefinitions;
+	}
+
+	/**
+	 * Setter for visit definitions. If false the bean definitions are 
+	 * left as they are and only aliases and embedded values, such as 
+	 * those in <code>@Value</code> annotations, are resolved. This suits
+	 * contexts that are mostly configured with annotations.
+	 * 
+	 * @param visitDefinitions false to leave bean definitions alone.
+	 */
+	public void setVisitDefinitions(boolean visitDefinitions) {
+		this.visitDefinitions = visitDefinitions;
+	}
+	
+	/**
+	 * Getter for record bindings.
+	 * 
+	 * @return true if the expressions each definition uses are recorded.
+	 */
+	public boolean isRecordBindings() {
+		return bindings != null;
+	}
+
+	/**
+	 * Setter for record bindings. If true the expressions each bean 
+	 * definition uses are recorded, along with a copy of the definition
+	 * before it was resolved, so that {@link #rebindDefinitions()} may be 
+	 * used. This is set before the bean factory is processed.
+	 * 
+	 * @param recordBindings true to record bindings.
+	 */
+	public void setRecordBindings(boolean recordBindings) {
+		if (recordBindings) {
+			if (bindings == null) {
+				bindings = new PropertyBindings();
+			}
+		}
+		else {
+			bindings = null;
+		}
+	}
+	
+	/**
+	 * Getter for bindings.
+	 * 
+	 * @return The bindings recorded, or null if they aren't being recorded.
+	 */
+	public PropertyBindings getBindings() {
+		return bindings;
+	}
+	
+	/**
+	 * Getter for defer resolution.
+	 * 
+	 * @return true if lazy and non-singleton definitions are resolved when
+	 * they are created.
+	 */
+	public boolean isDeferResolution() {
+		return deferResolution;
+	}
+
+	/**
+	 * Setter for defer resolution. If true, and the bean factory is an
+	 * {@link OddjobListableBeanFactory}, the definitions of lazy and 
+	 * non-singleton beans are only resolved when the bean is first 
+	 * created, so beans that are never used never have their Oddjob 
+	 * expressions evaluated. Values resolved this way are not in
+	 * {@link #getResolvedValues()} until the bean has been created.
+	 * 
+	 * @param deferResolution true to defer resolving lazy and non-singleton
+	 * definitions.
+	 */
+	public void setDeferResolution(boolean deferResolution) {
+		this.deferResolution = deferResolution;
+	}
+	
+	/**
+	 * Getter for parallel.
+	 * 
+	 * @return true if bean definitions are visited in parallel.
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Setter for parallel. If true, and there are at least 
+	 * {@link #PARALLEL_THRESHOLD} bean definitions, the definitions are
+	 * visited on the common fork join pool.
+	 * 
+	 * @param parallel true to visit bean definitions in parallel.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
+	/**
+	 * Provide the expressions this configurer has resolved and the values
+	 * they resolved to. This includes any values resolved at runtime via 
+	 * the embedded value resolver.
+	 * 
+	 * @return A copy of the resolved values. Never null.
+	 */
+	public Map<String, String> getResolvedValues() {
+		synchronized (resolvedValues) {
+			return new LinkedHashMap<String, String>(resolvedValues);
+		}
+	}
+	
+	/**
+	 * Are the values previously resolved, possibly by another configurer, 
+	 * still what Oddjob would resolve them to now. 
+	 * 
+	 * @param previous Expressions and the values they resolved to. 
+	 * 
+	 * @return true if all expressions still resolve to the same values.
+	 */
+	public boolean isCurrent(Map<String, String> previous) {
+		for (Map.Entry<String, String> entry : previous.entrySet()) {
+			String now = resolve(entry.getKey());
+			if (!Objects.equals(now, entry.getValue())) {
+				logger.debug("Value of [" + entry.getKey() + "] has changed from [" + 
+						entry.getValue() + "] to [" + now + "]");
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Resolve a single string value. Strings without a ${ are returned
+	 * without being parsed and expressions are parsed only once for the
+	 * session, with the parser of the {@link ParsedExpressionCache}.
+	 * 
+	 * @param strVal The string that may contain expressions.
+	 * 
+	 * @return The resolved value.
+	 */
+	protected String resolve(String strVal) {
+		if (!ParsedExpressionCache.hasPlaceholder(strVal)) {
+			return strVal;
+		}
+		ParsedExpression expression = expressions.parse(strVal);
+		// If an expression is constant we don't even try to
+		// evaluate it.
+		if (expression.isConstant()) {
+			return strVal;
+		}
+		try {
+			return expression.evaluate(session, String.class);
+		}
+		catch (ArooaConversionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	/**
 	 * Resolves ${} expressions as if in Oddjob. 
 	 *
 	 */
 	class BeanDirectoryResolver implements StringValueResolver {
 
-		private final ExpressionParser parser; 
+		private final Map<String, String> resolved;
+		
+		/** Expressions used by the definition being visited. May be null. */
+		private Set<String> used;
 		
 		public BeanDirectoryResolver() {
-			parser = session.getTools().getExpressionParser();
+			this(resolvedValues);
+		}
+		
+		public BeanDirectoryResolver(Map<String, String> resolved) {
+			this.resolved = resolved;
 		}
 		
 		public String resolveStringValue(String strVal) {
-			ParsedExpression expression = parser.parse(strVal);
-			// If an expression is constant we don't even try to
-			// evaluate it.
-			if (expression.isConstant()) {
+			String result = resolve(strVal);
+			if (result == strVal) {
 				return strVal;
 			}
-			try {
-				String result =
-						expression.evaluate(session, String.class);
-				if (!strVal.equals(result)) {
-					logger.debug("Replaced [" + strVal + 
-							"] with [" + result + "]");
-				}
-				return result;
+			resolved.put(strVal, result);
+			if (used != null) {
+				used.add(strVal);
 			}
-			catch (ArooaConversionException e) {
-				throw new RuntimeException(e);
+			if (!strVal.equals(result)) {
+				logger.debug("Replaced [" + strVal + 
+						"] with [" + result + "]");
 			}
+			return result;
 		}
 	}
 	
+	/**
+	 * What a range of definitions visited in parallel resolved.
+	 */
+	static class Visited {
+		
+		final Map<String, String> resolvedValues = 
+				new LinkedHashMap<String, String>();
+		
+		final List<BeanDefinitionStoreException> failures = 
+				new ArrayList<BeanDefinitionStoreException>();
+	}
 }
@@ -0,0 +1,130 @@
+package org.oddjob.spring;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.convert.ArooaConversionException;
+import org.oddjob.arooa.runtime.RetainUnexpandedStrings;
+import org.oddjob.arooa.runtime.SubstituationPolicySession;
+import org.springframework.core.env.PropertySource;
+
+/**
+ * A Spring {@link PropertySource} that resolves properties from Oddjob
+ * when they are asked for. A property name is resolved just as
+ * <code>${name}</code> would be by {@link OddjobPropertyConfigurer}, so
+ * it may be an Oddjob property or the path of a bean property.
+ * <p>
+ * This allows <code>@Value</code>, <code>Environment.getProperty</code>
+ * and a <code>PropertySourcesPlaceholderConfigurer</code> to use values
+ * from Oddjob without the configurer visiting every bean definition.
+ * <p>
+ * While a context is being refreshed the same names are often asked for
+ * many times, so what each resolves to is remembered until
+ * {@link #endRefresh()}. After that every request goes to Oddjob.
+ *
+ * @see SpringBase#setResolveDefinitions(boolean)
+ */
+public class OddjobPropertySource extends PropertySource<ArooaSession> {
+
+	/** The name this source is registered with. */
+	public static final String PROPERTY_SOURCE_NAME = "oddjob";
+
+	/** Remembers that a name resolves to nothing. */
+	private static final Object NONE = new Object();
+
+	/** The session that leaves unresolved expressions as they are. */
+	private final ArooaSession retainingSession;
+
+	/** Parsed expressions shared with other contexts in the session. */
+	private final ParsedExpressionCache expressions;
+
+	/** Where to record what expressions resolved to. May be null. */
+	private final Map<String, String> resolvedValues;
+
+	/** What names resolved to during a refresh. Null afterwards. */
+	private volatile Map<String, Object> memo =
+			new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param session The session from Oddjob.
+	 */
+	public OddjobPropertySource(ArooaSession session) {
+		this(session, null);
+	}
+
+	/**
+	 * Constructor for a source that records each property it resolves as
+	 * the expression <code>${name}</code> and its value, so that what it 
+	 * resolved can be checked later with 
+	 * {@link OddjobPropertyConfigurer#isCurrent(Map)}.
+	 *
+	 * @param session The session from Oddjob.
+	 * @param resolvedValues Where to record values. May be null.
+	 * 
+	 * @see OddjobPropertyConfigurer#createPropertySource()
+	 */
+	public OddjobPropertySource(ArooaSession session, 
+			Map<String, String> resolvedValues) {
+		super(PROPERTY_SOURCE_NAME, session);
+		this.resolvedValues = resolvedValues;
+		this.retainingSession = new SubstituationPolicySession(
+				session, new RetainUnexpandedStrings());
+		this.expressions = ParsedExpressionCache.forSession(session);
+	}
+
+	/**
+	 * Resolve a property from Oddjob.
+	 *
+	 * @param name The name of the property.
+	 *
+	 * @return The value, or null if Oddjob can't resolve it.
+	 */
+	@Override
+	public Object getProperty(String name) {
+		Map<String, Object> memo = this.memo;
+		if (memo == null) {
+			return resolve(name);
+		}
+		Object value = memo.get(name);
+		if (value == null) {
+			value = resolve(name);
+			memo.put(name, value == null ? NONE : value);
+		}
+		return value == NONE ? null : value;
+	}
+
+	/**
+	 * Stop remembering values because the context has finished refreshing.
+	 */
+	public void endRefresh() {
+		memo = null;
+	}
+
+	/**
+	 * Resolve a property from Oddjob.
+	 *
+	 * @param name The name of the property.
+	 *
+	 * @return The value or null.
+	 */
+	protected String resolve(String name) {
+		String placeholder = "${" + name + "}";
+		try {
+			String value = expressions.parse(placeholder).evaluate(
+					retainingSession, String.class);
+			if (resolvedValues != null) {
+				resolvedValues.put(placeholder, value);
+			}
+			if (value == null || placeholder.equals(value)) {
+				return null;
+			}
+			return value;
+		}
+		catch (ArooaConversionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package org.oddjob.spring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.ResourceEntityResolver;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.Resource;
+
+/**
+ * Loads the bean definitions from several XML resources at the same time.
+ * Each resource is parsed into a registry of its own on a fork join pool
+ * and the registries are then merged into the application context in the
+ * order the resources were given, so a definition in a later resource
+ * overrides one of the same name in an earlier resource just as it would
+ * if they were read one after another.
+ * <p>
+ * Names Spring generates for beans without an id would clash between
+ * registries, so these are given the next free generated name as they are
+ * merged. The bean class name alias Spring registers for the first
+ * unnamed bean of a class is only kept if the name isn't already used.
+ *
+ * @see SpringBase#setParallelLoad(boolean)
+ */
+public class ParallelBeanDefinitionLoader {
+
+	private static final Logger logger = LoggerFactory.getLogger(
+			ParallelBeanDefinitionLoader.class);
+
+	/** The context to load the definitions into. */
+	private final GenericApplicationContext applicationContext;
+
+	/** The pool to parse on. */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructor that parses on the common pool.
+	 *
+	 * @param applicationContext The context to load the definitions into.
+	 */
+	public ParallelBeanDefinitionLoader(
+			GenericApplicationContext applicationContext) {
+		this(applicationContext, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param applicationContext The context to load the definitions into.
+	 * @param pool The pool to parse on.
+	 */
+	public ParallelBeanDefinitionLoader(
+			GenericApplicationContext applicationContext, ForkJoinPool pool) {
+		this.applicationContext = applicationContext;
+		this.pool = pool;
+	}
+
+	/**
+	 * Load the bean definitions from the resources.
+	 *
+	 * @param sources The resources.
+	 *
+	 * @return The number of definitions loaded.
+	 *
+	 * @throws BeanDefinitionStoreException If a resource fails to parse.
+	 * If several fail the exception from the first in order is thrown.
+	 */
+	public int loadBeanDefinitions(List<Resource> sources)
+	throws BeanDefinitionStoreException {
+
+		List<Future<DefaultListableBeanFactory>> futures =
+				new ArrayList<Future<DefaultListableBeanFactory>>();
+
+		for (final Resource source : sources) {
+			futures.add(pool.submit(new Callable<DefaultListableBeanFactory>() {
+				@Override
+				public DefaultListableBeanFactory call() {
+					return parse(source);
+				}
+			}));
+		}
+
+		int count = 0;
+		for (Future<DefaultListableBeanFactory> future : futures) {
+			DefaultListableBeanFactory registry;
+			try {
+				registry = future.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BeanDefinitionStoreException(
+						"Interrupted loading bean definitions.", e);
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new BeanDefinitionStoreException(
+						"Failed loading bean definitions.", cause);
+			}
+			count += merge(registry);
+		}
+
+		logger.debug("Loaded " + count + " bean definitions from " +
+				sources.size() + " resources in parallel.");
+
+		return count;
+	}
+
+	/**
+	 * Parse a single resource into a registry of its own.
+	 *
+	 * @param source The resource.
+	 *
+	 * @return The registry.
+	 */
+	protected DefaultListableBeanFactory parse(Resource source) {
+
+		DefaultListableBeanFactory registry = new DefaultListableBeanFactory();
+
+		XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(registry);
+		reader.setEnvironment(applicationContext.getEnvironment());
+		reader.setResourceLoader(applicationContext);
+		reader.setEntityResolver(new ResourceEntityResolver(applicationContext));
+
+		reader.loadBeanDefinitions(source);
+
+		return registry;
+	}
+
+	/**
+	 * Merge the definitions and aliases in the registry into the context.
+	 *
+	 * @param registry The registry.
+	 *
+	 * @return The number of definitions merged.
+	 */
+	protected int merge(DefaultListableBeanFactory registry) {
+
+		String[] names = registry.getBeanDefinitionNames();
+		for (String name : names) {
+
+			BeanDefinition definition = registry.getBeanDefinition(name);
+
+			String mergedName = name;
+			boolean generated = isGenerated(name);
+			if (generated && applicationContext.isBeanNameInUse(name)) {
+				mergedName = nextGeneratedName(name);
+			}
+
+			applicationContext.registerBeanDefinition(mergedName, definition);
+
+			for (String alias : registry.getAliases(name)) {
+				if (generated && alias.equals(definition.getBeanClassName())
+						&& applicationContext.isBeanNameInUse(alias)) {
+					continue;
+				}
+				applicationContext.registerAlias(mergedName, alias);
+			}
+		}
+		return names.length;
+	}
+
+	static boolean isGenerated(String name) {
+		int index = name.lastIndexOf(
+				BeanDefinitionReaderUtils.GENERATED_BEAN_NAME_SEPARATOR);
+		if (index < 0 || index == name.length() - 1) {
+			return false;
+		}
+		for (int i = index + 1; i < name.length(); ++i) {
+			if (!Character.isDigit(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	String nextGeneratedName(String name) {
+		String prefix = name.substring(0, name.lastIndexOf(
+				BeanDefinitionReaderUtils.GENERATED_BEAN_NAME_SEPARATOR) + 1);
+		for (int counter = 0; ; ++counter) {
+			String candidate = prefix + counter;
+			if (!applicationContext.isBeanNameInUse(candidate)) {
+				return candidate;
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package org.oddjob.spring;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.runtime.ExpressionParser;
+import org.oddjob.arooa.runtime.ParsedExpression;
+import org.oddjob.arooa.runtime.RetainUnexpandedStrings;
+import org.oddjob.arooa.runtime.SubstituationPolicySession;
+
+/**
+ * Remembers the expressions Oddjob's {@link ExpressionParser} has parsed
+ * so that the same string in many bean definitions, or resolved again and
+ * again as an embedded value, is only parsed once. There is one cache for
+ * each session, shared by all the Spring contexts using that session.
+ * <p>
+ * Expressions are parsed as the Spring components evaluate them, leaving
+ * placeholders that can't be resolved as they are. The parser used is 
+ * that of the session wrapped with {@link RetainUnexpandedStrings}, and 
+ * every user of the cache parses with it, so that an expression parsed 
+ * by one is found by the others.
+ * <p>
+ * Most strings in bean definitions contain no expression at all. These
+ * can be recognised by {@link #hasPlaceholder(String)} without parsing
+ * and are never remembered.
+ *
+ * @see OddjobPropertyConfigurer
+ */
+public class ParsedExpressionCache {
+
+	/** The maximum number of expressions to keep. */
+	static final int MAX_EXPRESSIONS = 1024;
+
+	/** The caches by session. */
+	private static final Map<ArooaSession, ParsedExpressionCache> caches =
+			Collections.synchronizedMap(
+					new WeakHashMap<ArooaSession, ParsedExpressionCache>());
+
+	/** The session's own parser, to notice if it changes. */
+	private final ExpressionParser sessionParser;
+
+	/** The parser that leaves unresolved expressions as they are. */
+	private final ExpressionParser parser;
+
+	/** Parsed expressions by the string they were parsed from. */
+	private final Map<String, ParsedExpression> expressions =
+			new ConcurrentHashMap<String, ParsedExpression>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sessionParser The session's own parser.
+	 * @param parser The parser to parse with.
+	 */
+	ParsedExpressionCache(ExpressionParser sessionParser,
+			ExpressionParser parser) {
+		this.sessionParser = sessionParser;
+		this.parser = parser;
+	}
+
+	/**
+	 * Provide the cache for a session, creating it if necessary. A new
+	 * cache is created if the session's parser has changed.
+	 *
+	 * @param session The session.
+	 *
+	 * @return The cache. Never null.
+	 */
+	public static ParsedExpressionCache forSession(ArooaSession session) {
+		ExpressionParser sessionParser = 
+				session.getTools().getExpressionParser();
+		synchronized (caches) {
+			ParsedExpressionCache cache = caches.get(session);
+			if (cache == null || cache.sessionParser != sessionParser) {
+				cache = new ParsedExpressionCache(sessionParser,
+						new SubstituationPolicySession(session, 
+								new RetainUnexpandedStrings())
+						.getTools().getExpressionParser());
+				caches.put(session, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Might the value contain an expression? A value that doesn't contain
+	 * <code>${</code> is constant and evaluates to itself.
+	 *
+	 * @param value The value. Must not be null.
+	 *
+	 * @return true if the value needs to be parsed.
+	 */
+	public static boolean hasPlaceholder(String value) {
+		return value.indexOf("${") >= 0;
+	}
+
+	/**
+	 * Provide the parsed expression for a string, parsing it if it hasn't
+	 * been parsed before.
+	 *
+	 * @param value The string.
+	 *
+	 * @return The expression. Never null.
+	 */
+	public ParsedExpression parse(String value) {
+		ParsedExpression expression = expressions.get(value);
+		if (expression == null) {
+			expression = parser.parse(value);
+			if (expressions.size() >= MAX_EXPRESSIONS) {
+				expressions.clear();
+			}
+			expressions.put(value, expression);
+		}
+		return expression;
+	}
+
+	/**
+	 * Has a string been parsed and remembered.
+	 *
+	 * @param value The string.
+	 *
+	 * @return true if the parsed expression is in the cache.
+	 */
+	boolean contains(String value) {
+		return expressions.containsKey(value);
+	}
+
+	/**
+	 * Getter for the parser.
+	 *
+	 * @return The parser expressions are parsed with.
+	 */
+	public ExpressionParser getParser() {
+		return parser;
+	}
+}
@@ -0,0 +1,268 @@
+package org.oddjob.spring;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedProperties;
+import org.springframework.beans.factory.support.ManagedSet;
+
+/**
+ * Records which Oddjob expressions each bean definition used when
+ * {@link OddjobPropertyConfigurer} resolved it, and keeps a copy of the
+ * definition as it was before it was resolved, so that the definitions
+ * using an expression can be resolved again when its value changes.
+ * <p>
+ * Resolving a definition changes it in place, including any inner bean
+ * definitions, collections and typed string values it holds, so the copy
+ * kept is a deep copy of all of these. Definitions that aren't an
+ * {@link AbstractBeanDefinition} can't be copied and are not recorded.
+ *
+ * @see SpringService#rebind()
+ */
+public class PropertyBindings {
+
+	/** Expressions used by each bean. */
+	private final Map<String, Set<String>> expressionsByBean =
+			new ConcurrentHashMap<String, Set<String>>();
+
+	/** Each bean's definition as it was before it was resolved. */
+	private final Map<String, BeanDefinition> originals =
+			new ConcurrentHashMap<String, BeanDefinition>();
+
+	/**
+	 * Keep a definition as it was before it was resolved, along with the
+	 * expressions resolving it used. If no expressions were used, or the
+	 * definition couldn't be copied, anything kept for the bean before is
+	 * forgotten.
+	 *
+	 * @param beanName The bean name.
+	 * @param original A copy of the definition before it was resolved,
+	 * from {@link #copy(BeanDefinition)}. May be null if it couldn't be
+	 * copied.
+	 * @param expressions The expressions used.
+	 */
+	public void bind(String beanName, BeanDefinition original,
+			Collection<String> expressions) {
+		if (original == null || expressions.isEmpty()) {
+			forget(beanName);
+			return;
+		}
+		Set<String> used = ConcurrentHashMap.newKeySet();
+		used.addAll(expressions);
+		expressionsByBean.put(beanName, used);
+		originals.put(beanName, original);
+	}
+
+	/**
+	 * Forget a bean, because its definition has been removed.
+	 *
+	 * @param beanName The bean name.
+	 */
+	public void forget(String beanName) {
+		expressionsByBean.remove(beanName);
+		originals.remove(beanName);
+	}
+
+	/**
+	 * Provide every expression used by any bean.
+	 *
+	 * @return The expressions. Never null.
+	 */
+	public Set<String> getExpressions() {
+		Set<String> all = new LinkedHashSet<String>();
+		for (Set<String> used : expressionsByBean.values()) {
+			all.addAll(used);
+		}
+		return all;
+	}
+
+	/**
+	 * Provide the expressions a bean used.
+	 *
+	 * @param beanName The bean name.
+	 *
+	 * @return The expressions. Empty if none were recorded.
+	 */
+	public Set<String> getExpressions(String beanName) {
+		Set<String> used = expressionsByBean.get(beanName);
+		if (used == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(used);
+	}
+
+	/**
+	 * Provide the names of the beans that used any of the expressions.
+	 *
+	 * @param expressions The expressions.
+	 *
+	 * @return The bean names. Never null.
+	 */
+	public Set<String> beansUsing(Collection<String> expressions) {
+		Set<String> beans = new LinkedHashSet<String>();
+		for (Map.Entry<String, Set<String>> entry :
+				expressionsByBean.entrySet()) {
+			if (!Collections.disjoint(entry.getValue(), expressions)) {
+				beans.add(entry.getKey());
+			}
+		}
+		return beans;
+	}
+
+	/**
+	 * Provide a copy of a bean's definition as it was before it was
+	 * resolved. The copy may be resolved without changing what is kept.
+	 *
+	 * @param beanName The bean name.
+	 *
+	 * @return A copy of the original definition, or null if there isn't
+	 * one.
+	 */
+	public BeanDefinition original(String beanName) {
+		BeanDefinition original = originals.get(beanName);
+		if (original == null) {
+			return null;
+		}
+		return copy(original);
+	}
+
+	/**
+	 * Make a deep copy of a bean definition.
+	 *
+	 * @param definition The definition.
+	 *
+	 * @return The copy, or null if the definition can't be copied.
+	 */
+	public static BeanDefinition copy(BeanDefinition definition) {
+		if (!(definition instanceof AbstractBeanDefinition)) {
+			return null;
+		}
+		AbstractBeanDefinition copy =
+				((AbstractBeanDefinition) definition).cloneBeanDefinition();
+
+		MutablePropertyValues pvs = copy.getPropertyValues();
+		List<PropertyValue> list = pvs.getPropertyValueList();
+		for (int i = 0; i < list.size(); ++i) {
+			PropertyValue pv = list.get(i);
+			pvs.setPropertyValueAt(
+					new PropertyValue(pv, copyValue(pv.getValue())), i);
+		}
+
+		ConstructorArgumentValues cas = copy.getConstructorArgumentValues();
+		for (ValueHolder holder : cas.getIndexedArgumentValues().values()) {
+			holder.setValue(copyValue(holder.getValue()));
+		}
+		for (ValueHolder holder : cas.getGenericArgumentValues()) {
+			holder.setValue(copyValue(holder.getValue()));
+		}
+		return copy;
+	}
+
+	/**
+	 * Make a deep copy of a value in a bean definition that resolving
+	 * would otherwise change in place.
+	 *
+	 * @param value The value.
+	 *
+	 * @return A copy, or the value itself if it can't be changed in place.
+	 */
+	static Object copyValue(Object value) {
+		if (value instanceof BeanDefinitionHolder) {
+			BeanDefinitionHolder holder = (BeanDefinitionHolder) value;
+			BeanDefinition inner = copy(holder.getBeanDefinition());
+			if (inner == null) {
+				return value;
+			}
+			return new BeanDefinitionHolder(inner, holder.getBeanName(),
+					holder.getAliases());
+		}
+		if (value instanceof BeanDefinition) {
+			BeanDefinition inner = copy((BeanDefinition) value);
+			return inner == null ? value : inner;
+		}
+		if (value instanceof TypedStringValue) {
+			TypedStringValue original = (TypedStringValue) value;
+			TypedStringValue copy = new TypedStringValue(original.getValue());
+			if (original.hasTargetType()) {
+				copy.setTargetType(original.getTargetType());
+			}
+			else {
+				copy.setTargetTypeName(original.getTargetTypeName());
+			}
+			copy.setSource(original.getSource());
+			copy.setSpecifiedTypeName(original.getSpecifiedTypeName());
+			if (original.isDynamic()) {
+				copy.setDynamic();
+			}
+			return copy;
+		}
+		if (value instanceof ManagedList) {
+			ManagedList<?> original = (ManagedList<?>) value;
+			ManagedList<Object> copy = new ManagedList<Object>(original.size());
+			for (Object element : original) {
+				copy.add(copyValue(element));
+			}
+			copy.setSource(original.getSource());
+			copy.setElementTypeName(original.getElementTypeName());
+			copy.setMergeEnabled(original.isMergeEnabled());
+			return copy;
+		}
+		if (value instanceof ManagedSet) {
+			ManagedSet<?> original = (ManagedSet<?>) value;
+			ManagedSet<Object> copy = new ManagedSet<Object>(original.size());
+			for (Object element : original) {
+				copy.add(copyValue(element));
+			}
+			copy.setSource(original.getSource());
+			copy.setElementTypeName(original.getElementTypeName());
+			copy.setMergeEnabled(original.isMergeEnabled());
+			return copy;
+		}
+		if (value instanceof ManagedProperties) {
+			ManagedProperties original = (ManagedProperties) value;
+			ManagedProperties copy = new ManagedProperties();
+			for (Map.Entry<Object, Object> entry : original.entrySet()) {
+				copy.put(copyValue(entry.getKey()), copyValue(entry.getValue()));
+			}
+			copy.setSource(original.getSource());
+			copy.setMergeEnabled(original.isMergeEnabled());
+			return copy;
+		}
+		if (value instanceof ManagedMap) {
+			ManagedMap<?, ?> original = (ManagedMap<?, ?>) value;
+			ManagedMap<Object, Object> copy =
+					new ManagedMap<Object, Object>(original.size());
+			for (Map.Entry<?, ?> entry : original.entrySet()) {
+				copy.put(copyValue(entry.getKey()), copyValue(entry.getValue()));
+			}
+			copy.setSource(original.getSource());
+			copy.setKeyTypeName(original.getKeyTypeName());
+			copy.setValueTypeName(original.getValueTypeName());
+			copy.setMergeEnabled(original.isMergeEnabled());
+			return copy;
+		}
+		if (value instanceof Object[]) {
+			Object[] copy = ((Object[]) value).clone();
+			for (int i = 0; i < copy.length; ++i) {
+				copy[i] = copyValue(copy[i]);
+			}
+			return copy;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,103 @@
+package org.oddjob.spring;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.oddjob.arooa.ArooaSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Shares a single {@link OddjobApplicationContext} between all the Spring
+ * components in the same Oddjob session, rather than each application
+ * context having a parent of its own.
+ * <p>
+ * The parent for a session is created and refreshed when it is first
+ * acquired and closed when the last component using it releases it.
+ * Every {@link #acquire(ArooaSession)} must be matched by a
+ * {@link #release(ArooaSession)}.
+ * <p>
+ * The parents are held statically and each holds its session, so a 
+ * child context that is never closed keeps its session, and everything
+ * in Oddjob's bean registry, from being garbage collected. Holding the
+ * session weakly wouldn't help as the parent refers to it. Components
+ * release the parent once their context has closed.
+ *
+ * @see SpringBase#loadApplicationContext()
+ */
+public class SharedParentContexts {
+
+	private static final Logger logger = LoggerFactory.getLogger(
+			SharedParentContexts.class);
+
+	/** The shared contexts, by session identity. */
+	private static final Map<ArooaSession, Entry> contexts =
+			new IdentityHashMap<ArooaSession, Entry>();
+
+	/**
+	 * Provide the parent context for the session, creating it if there
+	 * isn't one.
+	 *
+	 * @param session The session.
+	 *
+	 * @return A refreshed context. Never null.
+	 */
+	public static synchronized ConfigurableApplicationContext acquire(
+			ArooaSession session) {
+		Entry entry = contexts.get(session);
+		if (entry == null) {
+			logger.debug("Creating parent ApplicationContext for session " +
+					session);
+			OddjobApplicationContext context =
+					new OddjobApplicationContext(session);
+			context.refresh();
+			entry = new Entry(context);
+			contexts.put(session, entry);
+		}
+		++entry.references;
+		return entry.context;
+	}
+
+	/**
+	 * Release the parent context for the session, closing it if nothing
+	 * else is using it.
+	 *
+	 * @param session The session the context was acquired for.
+	 */
+	public static synchronized void release(ArooaSession session) {
+		Entry entry = contexts.get(session);
+		if (entry == null) {
+			return;
+		}
+		if (--entry.references == 0) {
+			contexts.remove(session);
+			logger.debug("Closing parent ApplicationContext for session " +
+					session);
+			entry.context.close();
+		}
+	}
+
+	/**
+	 * Get the number of sessions that currently have a shared parent.
+	 *
+	 * @return The number of parents.
+	 */
+	static synchronized int size() {
+		return contexts.size();
+	}
+
+	/**
+	 * A shared context.
+	 */
+	static class Entry {
+
+		private final ConfigurableApplicationContext context;
+
+		private int references;
+
+		Entry(ConfigurableApplicationContext context) {
+			this.context = context;
+		}
+	}
+}
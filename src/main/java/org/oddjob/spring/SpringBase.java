@@ -1,16 +1,35 @@
 package org.oddjob.spring;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.oddjob.arooa.ArooaSession;
 import org.oddjob.arooa.deploy.annotations.ArooaHidden;
 import org.oddjob.arooa.life.ArooaSessionAware;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.ResourceEntityResolver;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
-import org.springframework.context.support.FileSystemXmlApplicationContext;
-import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.context.annotation.AnnotatedBeanDefinitionReader;
+import org.springframework.context.annotation.ClassPathBeanDefinitionScanner;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.util.ClassUtils;
 
 /**
  * Intended as a base class for to provide Spring Oddjob integration
@@ -25,6 +44,9 @@ implements ArooaSessionAware {
 	
 	private static final Logger logger = LoggerFactory.getLogger(SpringBase.class);
 	
+	/** The name of the startup step for parsing XML configuration. */
+	public static final String XML_PARSE_STEP = "oddjob.xml.parse";
+	
 	/** 
      * The name of the component. Can be any text.
 	 */
@@ -47,6 +69,21 @@ implements ArooaSessionAware {
 	 */
 	private String[] resources;
 
+	/**
+	 * The fully qualified names of annotated configuration classes. 
+	 * These may be used instead of, or as well as, files or resources.
+	 */
+	private String[] configClasses;
+	
+	/**
+	 * Packages to scan for annotated components. These may be used 
+	 * instead of, or as well as, files or resources. If the jar 
+	 * containing the components has a component index, created at build
+	 * time by the spring-context-indexer, it is used instead of scanning 
+	 * the class path.
+	 */
+	private String[] basePackages;
+
 	/** Provided by Oddjob. */
 	private ArooaSession session;
 
@@ -56,6 +93,90 @@ implements ArooaSessionAware {
 	 */
 	private ClassLoader classLoader;
 	
+	/**
+	 * A directory to keep snapshots of the parsed bean definitions in.
+	 * If this is set, the bean definitions are saved after the XML is 
+	 * first parsed and subsequent loads read the snapshot instead of 
+	 * parsing the XML again. The snapshot is discarded when any of the 
+	 * XML changes. 
+	 */
+	private File snapshotDir;
+	
+	/**
+	 * If true, and there is more than one file or resource, each is 
+	 * parsed at the same time on a fork join pool. The definitions are 
+	 * then combined in the order the files or resources were given, so 
+	 * the result is the same as if they were parsed one after another.
+	 */
+	private boolean parallelLoad;
+	
+	/**
+	 * If true, and there are very many bean definitions, the Oddjob 
+	 * properties in them are resolved on several threads at once. The
+	 * values resolved are the same as they would be on one thread.
+	 */
+	private boolean parallelResolve;
+	
+	/**
+	 * If false the Oddjob properties in bean definitions are not resolved
+	 * when the context loads. Oddjob properties are still available to
+	 * <code>@Value</code> annotations, the <code>Environment</code> and 
+	 * any <code>PropertySourcesPlaceholderConfigurer</code>. This saves 
+	 * visiting every bean definition in contexts configured mostly with
+	 * annotations. The default is true.
+	 */
+	private boolean resolveDefinitions = true;
+	
+	/**
+	 * If true the Oddjob properties in the definitions of lazy and 
+	 * non-singleton beans are only resolved when the bean is first 
+	 * created, so beans that are never used never evaluate them.
+	 */
+	private boolean deferResolution;
+	
+	/**
+	 * If true, every bean definition is marked lazy so that loading the 
+	 * application context doesn't wait for all the singletons to be 
+	 * created. Singletons are then created when they are first asked for
+	 * or in the background if warmUp is also set.
+	 */
+	private boolean lazyInit;
+	
+	/**
+	 * If true, and lazyInit is set, the singletons that would have been 
+	 * created on load are created in the background once the application 
+	 * context has loaded. Any bean that is asked for first is created 
+	 * straight away.
+	 */
+	private boolean warmUp;
+	
+	/**
+	 * The number of threads used to warm up beans. The default is 1. 
+	 * Spring creates singletons one at a time so more threads will rarely
+	 * help.
+	 */
+	private int warmUpThreads = 1;
+	
+	/**
+	 * The number of threads used to create the singletons when the 
+	 * application context loads. Singletons are created in the order of 
+	 * the dependencies given in their definitions, with independent 
+	 * singletons being created at the same time. The default is 0 which
+	 * means singletons are created one after another.
+	 */
+	private int instantiationThreads;
+	
+	/**
+	 * The number of beans to list in slowestBeans. The default is 10.
+	 */
+	private int slowestCount = 10;
+	
+	/** Records the steps of the last load. */
+	private volatile StartupRecorder startupRecorder;
+	
+	/** Milliseconds the last load took. */
+	private volatile long refreshTime;
+	
 	/**
 	 * Getter for the name.
 	 * 
@@ -110,6 +231,42 @@ implements ArooaSessionAware {
 		this.resources = resources;
 	}
 
+	/**
+	 * Getter for the configuration classes.
+	 * 
+	 * @return Array of class names or null if none have been set.
+	 */
+	public String[] getConfigClasses() {
+		return configClasses;
+	}
+
+	/**
+	 * Setter for the configuration classes.
+	 * 
+	 * @param configClasses The names of annotated configuration classes.
+	 */
+	public void setConfigClasses(String[] configClasses) {
+		this.configClasses = configClasses;
+	}
+
+	/**
+	 * Getter for the base packages.
+	 * 
+	 * @return Array of package names or null if none have been set.
+	 */
+	public String[] getBasePackages() {
+		return basePackages;
+	}
+
+	/**
+	 * Setter for the base packages.
+	 * 
+	 * @param basePackages The packages to scan for components.
+	 */
+	public void setBasePackages(String[] basePackages) {
+		this.basePackages = basePackages;
+	}
+
 	/**
 	 * Getter for the class loader being used to load the resources.
 	 * 
@@ -128,6 +285,249 @@ implements ArooaSessionAware {
 		this.classLoader = classLoader;
 	}
 
+	/**
+	 * Getter for the snapshot directory.
+	 * 
+	 * @return The directory or null if snapshots aren't being used.
+	 */
+	public File getSnapshotDir() {
+		return snapshotDir;
+	}
+
+	/**
+	 * Setter for the snapshot directory.
+	 * 
+	 * @param snapshotDir The directory to keep bean definition 
+	 * snapshots in.
+	 */
+	public void setSnapshotDir(File snapshotDir) {
+		this.snapshotDir = snapshotDir;
+	}
+
+	/**
+	 * Getter for parallel load.
+	 * 
+	 * @return true if files or resources are parsed in parallel.
+	 */
+	public boolean isParallelLoad() {
+		return parallelLoad;
+	}
+
+	/**
+	 * Setter for parallel load.
+	 * 
+	 * @param parallelLoad true to parse files or resources in parallel.
+	 */
+	public void setParallelLoad(boolean parallelLoad) {
+		this.parallelLoad = parallelLoad;
+	}
+
+	/**
+	 * Getter for resolve definitions.
+	 * 
+	 * @return false if Oddjob properties in bean definitions are left 
+	 * alone.
+	 */
+	public boolean isResolveDefinitions() {
+		return resolveDefinitions;
+	}
+
+	/**
+	 * Setter for resolve definitions.
+	 * 
+	 * @param resolveDefinitions false to leave Oddjob properties in bean 
+	 * definitions alone.
+	 */
+	public void setResolveDefinitions(boolean resolveDefinitions) {
+		this.resolveDefinitions = resolveDefinitions;
+	}
+
+	/**
+	 * Getter for defer resolution.
+	 * 
+	 * @return true if resolving lazy and non-singleton definitions is 
+	 * deferred.
+	 */
+	public boolean isDeferResolution() {
+		return deferResolution;
+	}
+
+	/**
+	 * Setter for defer resolution.
+	 * 
+	 * @param deferResolution true to resolve lazy and non-singleton 
+	 * definitions when the bean is first created.
+	 */
+	public void setDeferResolution(boolean deferResolution) {
+		this.deferResolution = deferResolution;
+	}
+
+	/**
+	 * Getter for parallel resolve.
+	 * 
+	 * @return true if properties are resolved in parallel.
+	 */
+	public boolean isParallelResolve() {
+		return parallelResolve;
+	}
+
+	/**
+	 * Setter for parallel resolve.
+	 * 
+	 * @param parallelResolve true to resolve properties in parallel.
+	 */
+	public void setParallelResolve(boolean parallelResolve) {
+		this.parallelResolve = parallelResolve;
+	}
+
+	/**
+	 * Getter for lazy init.
+	 * 
+	 * @return true if all beans are made lazy.
+	 */
+	public boolean isLazyInit() {
+		return lazyInit;
+	}
+
+	/**
+	 * Setter for lazy init.
+	 * 
+	 * @param lazyInit true to make all beans lazy.
+	 */
+	public void setLazyInit(boolean lazyInit) {
+		this.lazyInit = lazyInit;
+	}
+
+	/**
+	 * Getter for warm up.
+	 * 
+	 * @return true if lazy beans are warmed up in the background.
+	 */
+	public boolean isWarmUp() {
+		return warmUp;
+	}
+
+	/**
+	 * Setter for warm up.
+	 * 
+	 * @param warmUp true to warm up lazy beans in the background.
+	 */
+	public void setWarmUp(boolean warmUp) {
+		this.warmUp = warmUp;
+	}
+
+	/**
+	 * Getter for the number of warm up threads.
+	 * 
+	 * @return The number of threads.
+	 */
+	public int getWarmUpThreads() {
+		return warmUpThreads;
+	}
+
+	/**
+	 * Setter for the number of warm up threads.
+	 * 
+	 * @param warmUpThreads The number of threads. Must be at least 1.
+	 */
+	public void setWarmUpThreads(int warmUpThreads) {
+		this.warmUpThreads = warmUpThreads;
+	}
+
+	/**
+	 * Getter for the number of instantiation threads.
+	 * 
+	 * @return The number of threads.
+	 */
+	public int getInstantiationThreads() {
+		return instantiationThreads;
+	}
+
+	/**
+	 * Setter for the number of instantiation threads.
+	 * 
+	 * @param instantiationThreads The number of threads used to create 
+	 * singletons. 0 or 1 to create them one after another.
+	 */
+	public void setInstantiationThreads(int instantiationThreads) {
+		this.instantiationThreads = instantiationThreads;
+	}
+
+	/**
+	 * Getter for the number of slowest beans to list.
+	 * 
+	 * @return The number of beans.
+	 */
+	public int getSlowestCount() {
+		return slowestCount;
+	}
+
+	/**
+	 * Setter for the number of slowest beans to list.
+	 * 
+	 * @param slowestCount The number of beans.
+	 */
+	public void setSlowestCount(int slowestCount) {
+		this.slowestCount = slowestCount;
+	}
+
+	/**
+	 * Getter for the time the last application context took to load,
+	 * from parsing the configuration to the end of the refresh.
+	 * 
+	 * @return Milliseconds, or 0 if nothing has been loaded.
+	 */
+	public long getRefreshTime() {
+		return refreshTime;
+	}
+	
+	/**
+	 * Getter for the beans that took longest to create in the last 
+	 * application context loaded. The time of a bean does not include 
+	 * the time taken creating the beans it depends on. Beans created 
+	 * after loading, such as lazy beans, are included once created.
+	 * 
+	 * @return The beans and their times, slowest first. Null if nothing 
+	 * has been loaded.
+	 */
+	public String[] getSlowestBeans() {
+		StartupRecorder recorder = this.startupRecorder;
+		if (recorder == null) {
+			return null;
+		}
+		List<StartupRecorder.Step> steps = 
+				recorder.getSlowestBeans(slowestCount);
+		String[] slowest = new String[steps.size()];
+		for (int i = 0; i < slowest.length; ++i) {
+			slowest[i] = steps.get(i).toString();
+		}
+		return slowest;
+	}
+	
+	/**
+	 * Getter for a report of all the startup steps recorded when loading
+	 * the last application context.
+	 * 
+	 * @return The report. Null if nothing has been loaded.
+	 */
+	public String getStartupReport() {
+		StartupRecorder recorder = this.startupRecorder;
+		if (recorder == null) {
+			return null;
+		}
+		return recorder.getReport();
+	}
+	
+	/**
+	 * Allow sub classes access to the startup steps of the last 
+	 * application context loaded.
+	 * 
+	 * @return The recorder. Null if nothing has been loaded.
+	 */
+	protected StartupRecorder getStartupRecorder() {
+		return startupRecorder;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.oddjob.arooa.life.ArooaSessionAware#setArooaSession(org.oddjob.arooa.ArooaSession)
@@ -153,44 +553,418 @@ implements ArooaSessionAware {
 	 * @return The Application Context.
 	 */
 	public ConfigurableApplicationContext loadApplicationContext() {
+		return loadApplicationContext(createConfigurer());
+	}
 	
-		ClassLoader loader = classLoader;
-		if (loader == null) {
-			loader = getClass().getClassLoader();
-		}
+	/**
+	 * Create the configurer that resolves Oddjob properties in the 
+	 * bean definitions, set up from the properties of this component.
+	 * 
+	 * @return A new configurer.
+	 */
+	protected OddjobPropertyConfigurer createConfigurer() {
+		OddjobPropertyConfigurer configurer = 
+				new OddjobPropertyConfigurer(session);
+		configurer.setParallel(parallelResolve);
+		configurer.setVisitDefinitions(resolveDefinitions);
+		configurer.setDeferResolution(deferResolution);
+		return configurer;
+	}
+	
+	/**
+	 * Load a Spring Application Context using the given configurer to 
+	 * resolve Oddjob properties. Sub classes may use this to find out
+	 * which values were resolved into the context.
+	 * 
+	 * @param configurer The configurer. Must not be null.
+	 * 
+	 * @return The Application Context.
+	 */
+	protected ConfigurableApplicationContext loadApplicationContext(
+			OddjobPropertyConfigurer configurer) {
 		
 		ConfigurableApplicationContext parent = 
-				new OddjobApplicationContext(session);
-		parent.refresh();
+				SharedParentContexts.acquire(session);
+		
+		ParentRelease parentRelease = new ParentRelease(session);
+		try {
+			ConfigurableApplicationContext applicationContext = 
+					loadApplicationContext(configurer, parent);
+			if (applicationContext instanceof ChildApplicationContext) {
+				((ChildApplicationContext) applicationContext)
+						.parentRelease = parentRelease;
+			}
+			else {
+				parentRelease.child = applicationContext;
+				applicationContext.addApplicationListener(parentRelease);
+			}
+			return applicationContext;
+		}
+		catch (RuntimeException | Error e) {
+			parentRelease.release();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Load a Spring Application Context that is a child of the given 
+	 * parent. The parent is shared with other components in the same 
+	 * session and must not be closed.
+	 * 
+	 * @param configurer The configurer. Must not be null.
+	 * @param parent The parent context. Must not be null.
+	 * 
+	 * @return The Application Context.
+	 */
+	protected ConfigurableApplicationContext loadApplicationContext(
+			OddjobPropertyConfigurer configurer, 
+			ConfigurableApplicationContext parent) {
+	
+		long startNanos = System.nanoTime();
+		
+		StartupRecorder recorder = new StartupRecorder();
+		
+		ClassLoader loader = effectiveClassLoader();
+		
+		ConfigurableApplicationContext applicationContext = 
+				loadGenericApplicationContext(parent, loader, recorder);
+		
+		applicationContext.addBeanFactoryPostProcessor(configurer);
+		
+		OddjobPropertySource propertySource = configurer.createPropertySource();
+		applicationContext.getEnvironment().getPropertySources().addLast(
+				propertySource);
+		
+		LazyInitPostProcessor lazyInitPostProcessor = null;
+		if (lazyInit) {
+			lazyInitPostProcessor = new LazyInitPostProcessor(); 
+			applicationContext.addBeanFactoryPostProcessor(
+					lazyInitPostProcessor);
+		}
+		
+		OddjobBeanFactory oddjobBeanFactory = 
+				parent instanceof OddjobApplicationContext ?
+						((OddjobApplicationContext) parent).getOddjobBeanFactory() :
+							null;
+		
+		OddjobBeanFactory.RefreshCache refreshCache = 
+				oddjobBeanFactory == null ? null : 
+					oddjobBeanFactory.beginRefresh();
+		try {
+			applicationContext.refresh();
+		}
+		finally {
+			propertySource.endRefresh();
+			if (oddjobBeanFactory != null) {
+				oddjobBeanFactory.endRefresh(refreshCache);
+			}
+		}
+		
+		this.refreshTime = TimeUnit.NANOSECONDS.toMillis(
+				System.nanoTime() - startNanos);
+		this.startupRecorder = recorder;
+		
+		logger.debug("Loaded ApplicationContext in " + refreshTime + "ms.");
+		
+		if (lazyInitPostProcessor != null && warmUp) {
+			BeanWarmer warmer = new BeanWarmer(
+					applicationContext.getBeanFactory(), 
+					lazyInitPostProcessor.getMadeLazy(), 
+					warmUpThreads);
+			applicationContext.addApplicationListener(warmer);
+			warmer.start();
+		}
+		
+		return applicationContext;
+	}
+	
+	/**
+	 * Create a {@link GenericApplicationContext} and load the bean 
+	 * definitions into it ourselves rather than having an XML application 
+	 * context do it during refresh. Every context is created this way, so
+	 * the bean factory and startup recording are set up in one place, and
+	 * the definitions may be loaded from a snapshot or parsed in parallel,
+	 * and annotated configuration classes and component scanning used. 
+	 * 
+	 * @param parent The parent context.
+	 * @param loader The class loader.
+	 * @param applicationStartup Records the steps of loading the context.
+	 * 
+	 * @return A context ready to be refreshed.
+	 */
+	protected GenericApplicationContext loadGenericApplicationContext(
+			ApplicationContext parent, ClassLoader loader, 
+			ApplicationStartup applicationStartup) {
+		
+		if (files == null && resources == null && 
+				configClasses == null && basePackages == null) {
+			throw new IllegalStateException("No config specified.");
+		}
+		
+		GenericApplicationContext applicationContext = 
+				new ChildApplicationContext(createBeanFactory());
 		
-		ConfigurableApplicationContext applicationContext;
 		if (files != null) {
-			logger.info("Creating an ApplicationContext from file(s) " +
-					Arrays.toString(files));
+			// Resolve paths as FileSystemXmlApplicationContext does.
+			FileSystemResourceLoader resourceLoader = 
+					new FileSystemResourceLoader();
+			resourceLoader.setClassLoader(loader);
+			applicationContext.setResourceLoader(resourceLoader);
+		}
+		applicationContext.setParent(parent);
+		applicationContext.setClassLoader(loader);
+		applicationContext.setApplicationStartup(applicationStartup);
+		applicationContext.getDefaultListableBeanFactory()
+				.setApplicationStartup(applicationStartup);
+		
+		if (files != null || resources != null) {
+			List<String> locations = Arrays.asList(
+					files == null ? resources : files);
+			StartupStep parse = applicationStartup.start(XML_PARSE_STEP)
+					.tag("locations", locations.toString());
+			try {
+				loadXmlBeanDefinitions(applicationContext, locations);
+			}
+			finally {
+				parse.end();
+			}
+		}
+		
+		if (configClasses != null || basePackages != null) {
+			loadAnnotatedBeanDefinitions(applicationContext, loader);
+		}
+		
+		return applicationContext;
+	}
+	
+	/**
+	 * Load bean definitions from XML, either from a snapshot, in parallel,
+	 * or one resource after another.
+	 * 
+	 * @param applicationContext The context to load the definitions into.
+	 * @param locations The files or resources.
+	 */
+	protected void loadXmlBeanDefinitions(
+			GenericApplicationContext applicationContext, 
+			List<String> locations) {
+		
+		List<Resource> sources = new ArrayList<Resource>();
+		for (String location : locations) {
+			try {
+				sources.addAll(Arrays.asList(
+						applicationContext.getResources(location)));
+			}
+			catch (IOException e) {
+				throw new BeanDefinitionStoreException(
+						"Failed to resolve " + location, e);
+			}
+		}
+		
+		BeanDefinitionSnapshot snapshot = null;
+		if (snapshotDir != null) {
+			List<String> profiles = BeanDefinitionSnapshot.profiles(
+					applicationContext.getEnvironment());
+			snapshot = new BeanDefinitionSnapshot(
+					new File(snapshotDir, BeanDefinitionSnapshot.fileNameFor(
+							locations, profiles)),
+					sources, profiles);
+			if (snapshot.load(applicationContext)) {
+				return;
+			}
+		}
+		
+		logger.info("Creating an ApplicationContext from " + 
+				(files == null ? "resources(s) " : "file(s) ") + locations);
+		
+		if (parallelLoad && sources.size() > 1) {
+			new ParallelBeanDefinitionLoader(applicationContext)
+					.loadBeanDefinitions(sources);
+		}
+		else {
+			XmlBeanDefinitionReader reader = 
+					new XmlBeanDefinitionReader(applicationContext);
+			reader.setEnvironment(applicationContext.getEnvironment());
+			reader.setResourceLoader(applicationContext);
+			reader.setEntityResolver(
+					new ResourceEntityResolver(applicationContext));
 			
-			applicationContext = new FileSystemXmlApplicationContext(
-					files, false, parent) {
-			};
+			reader.loadBeanDefinitions(
+					sources.toArray(new Resource[sources.size()]));
 		}
-		else if (resources != null) {
-			logger.info("Creating an ApplicationContext from resources(s) " +
-					Arrays.toString(resources));
+		
+		if (snapshot != null) {
+			snapshot.save(applicationContext);
+		}
+	}
+	
+	/**
+	 * Register the configuration classes and scan the base packages.
+	 * <p>
+	 * The scanner is created after the class loader has been set on the
+	 * context so that a component index (META-INF/spring.components, as 
+	 * generated by the spring-context-indexer annotation processor) is 
+	 * found with the same class loader. If an index is found Spring uses 
+	 * it rather than scanning the class path.
+	 * 
+	 * @param applicationContext The context to register the definitions 
+	 * with.
+	 * @param loader The class loader to load configuration classes with.
+	 */
+	protected void loadAnnotatedBeanDefinitions(
+			GenericApplicationContext applicationContext, 
+			ClassLoader loader) {
+		
+		if (configClasses != null) {
+			logger.info("Registering configuration class(es) " + 
+					Arrays.toString(configClasses));
 			
-			applicationContext = new ClassPathXmlApplicationContext(
-					resources, false, parent);
+			Class<?>[] classes = new Class<?>[configClasses.length];
+			for (int i = 0; i < classes.length; ++i) {
+				try {
+					classes[i] = ClassUtils.forName(configClasses[i], loader);
+				}
+				catch (ClassNotFoundException | LinkageError e) {
+					throw new IllegalStateException(
+							"Failed to load configuration class " + 
+									configClasses[i], e);
+				}
+			}
+			new AnnotatedBeanDefinitionReader(applicationContext, 
+					applicationContext.getEnvironment()).register(classes);
+		}
+		
+		if (basePackages != null) {
+			logger.info("Scanning package(s) " + 
+					Arrays.toString(basePackages));
+			
+			ClassPathBeanDefinitionScanner scanner = 
+					new ClassPathBeanDefinitionScanner(applicationContext, 
+							true, applicationContext.getEnvironment(), 
+							applicationContext);
+			scanner.scan(basePackages);
+		}
+	}
+	
+	/**
+	 * Create the bean factory for the application context. 
+	 * 
+	 * @return A new bean factory without a parent.
+	 */
+	protected DefaultListableBeanFactory createBeanFactory() {
+		OddjobListableBeanFactory beanFactory = 
+				new OddjobListableBeanFactory();
+		beanFactory.setInstantiationThreads(instantiationThreads);
+		return beanFactory;
+	}
+	
+	/**
+	 * Provide the class loader that will be given to Spring.
+	 * 
+	 * @return The class loader. Never null.
+	 */
+	protected ClassLoader effectiveClassLoader() {
+		if (classLoader == null) {
+			return getClass().getClassLoader();
 		}
 		else {
-			throw new IllegalStateException("No config specified.");
+			return classLoader;
+		}
+	}
+	
+	/**
+	 * Provide a key that identifies the configuration that
+	 * {@link #loadApplicationContext()} would load. Two components with
+	 * equal keys load the same definitions in the same way, although 
+	 * Oddjob may resolve different values into them. Every setting that
+	 * changes how the context is loaded or its beans are created is part
+	 * of the key. The name and slowest count only change what is reported
+	 * and are left out.
+	 * 
+	 * @return A key suitable for use in a hash map.
+	 */
+	protected Object configurationKey() {
+		return Arrays.<Object>asList(
+				asList(files), asList(resources), 
+				asList(configClasses), asList(basePackages), 
+				effectiveClassLoader(),
+				snapshotDir, parallelLoad, parallelResolve, 
+				resolveDefinitions, deferResolution, lazyInit, 
+				warmUp, warmUpThreads, instantiationThreads);
+	}
+	
+	static List<String> asList(String[] strings) {
+		if (strings == null) {
+			return Collections.emptyList();
+		}
+		else {
+			return Arrays.asList(strings);
 		}
+	}
+	
+	/**
+	 * The context every component creates. The shared parent is released
+	 * once this has finished closing, so the parent outlives the
+	 * destruction of the child's beans, which may still use Oddjob beans
+	 * through it.
+	 */
+	static class ChildApplicationContext extends GenericApplicationContext {
 		
-		((DefaultResourceLoader) applicationContext).setClassLoader(loader);
+		/** Releases the parent. Null until the context has loaded. */
+		private volatile ParentRelease parentRelease;
 		
-		applicationContext.addBeanFactoryPostProcessor(
-				new OddjobPropertyConfigurer(session));
+		ChildApplicationContext(DefaultListableBeanFactory beanFactory) {
+			super(beanFactory);
+		}
 		
-		applicationContext.refresh();
+		@Override
+		protected void doClose() {
+			try {
+				super.doClose();
+			}
+			finally {
+				ParentRelease parentRelease = this.parentRelease;
+				if (parentRelease != null && !isActive()) {
+					parentRelease.release();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Releases the shared parent context. Contexts that aren't a
+	 * {@link ChildApplicationContext}, such as those a sub class creates
+	 * itself, have the parent released when the child context publishes
+	 * that it is closing.
+	 */
+	static class ParentRelease 
+	implements ApplicationListener<ContextClosedEvent> {
 		
-		return applicationContext;
+		private final ArooaSession session;
+		
+		private final AtomicBoolean released = new AtomicBoolean();
+		
+		/** The child context. Events from its own children are ignored. */
+		private volatile ApplicationContext child;
+		
+		ParentRelease(ArooaSession session) {
+			this.session = session;
+		}
+		
+		@Override
+		public void onApplicationEvent(ContextClosedEvent event) {
+			if (event.getApplicationContext() == child) {
+				release();
+			}
+		}
+		
+		/**
+		 * Release the parent. Only the first call has any effect.
+		 */
+		void release() {
+			if (released.compareAndSet(false, true)) {
+				SharedParentContexts.release(session);
+			}
+		}
 	}
 	
 	@Override
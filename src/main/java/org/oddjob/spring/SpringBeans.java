@@ -1,7 +1,6 @@
 package org.oddjob.spring;
 
 import org.oddjob.arooa.life.Destroy;
-import org.oddjob.arooa.registry.BeanDirectory;
 import org.oddjob.arooa.registry.BeanDirectoryOwner;
 import org.oddjob.framework.adapt.HardReset;
 import org.oddjob.framework.adapt.SoftReset;
@@ -40,7 +39,11 @@ implements Runnable, BeanDirectoryOwner {
 	
 
 	/** The resultant ApplicationContext. */
-	private ConfigurableApplicationContext applicationContext;
+	private volatile ConfigurableApplicationContext applicationContext;
+	
+	/** Publishes the directory for the current application context. */
+	private final BeanDirectoryPublisher publisher = 
+			new BeanDirectoryPublisher();
 	
 	/*
 	 * (non-Javadoc)
@@ -51,28 +54,33 @@ implements Runnable, BeanDirectoryOwner {
 		logger.info("Loading Application Context.");
 		
 		applicationContext = 
-				loadApplicationContext();	}
+				loadApplicationContext();
+		
+		publisher.publish(applicationContext, getArooaSession());
+	}
 	
 	/**
+	 * Provide the beans. The same directory is provided until this 
+	 * component is reset, after which a directory provided before fails
+	 * if used.
+	 * 
 	 * @see BeanDirectoryOwner
 	 */
-	public BeanDirectory provideBeanDirectory() {
-		if (applicationContext == null) {
-			return null;
-		}
-		else {
-			return new BeanDirectoryAdaptor(applicationContext, 
-					getArooaSession());
-		}		
+	public BulkBeanDirectory provideBeanDirectory() {
+		return publisher.getCurrent();
 	}
 
 	@SoftReset
 	@HardReset
 	@Destroy
 	public void reset() {
+		publisher.withdraw();
+		ConfigurableApplicationContext applicationContext = 
+				this.applicationContext;
 		if (applicationContext != null) {
 			logger.info("Closing Application Context.");
 			applicationContext.close();
+			this.applicationContext = null;
 		}
 	}
 }
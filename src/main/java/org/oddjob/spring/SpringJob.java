@@ -1,5 +1,8 @@
 package org.oddjob.spring;
 
+import org.oddjob.arooa.life.Destroy;
+import org.oddjob.framework.adapt.HardReset;
+import org.oddjob.framework.adapt.SoftReset;
 import org.springframework.context.ConfigurableApplicationContext;
 
 /**
@@ -14,6 +17,11 @@ import org.springframework.context.ConfigurableApplicationContext;
  * {@link SpringService} the Spring bean are not available outside
  * of this component because the application context is closed once
  * the job has executed.
+ * <p>
+ * If a <code>cacheSize</code> is given the application context is
+ * instead kept warm between runs and reused as long as the configuration
+ * and the Oddjob values resolved into it haven't changed. Cached contexts
+ * are closed when the job is reset or destroyed.
  * 
  * @author rob
  *
@@ -25,22 +33,89 @@ implements Runnable {
 	 * a bean name must be provided. */
 	private String beanName;
 		
+	/** The number of application contexts to keep between runs.
+	 * The default is 0 which means the context is closed after each run. */
+	private int cacheSize;
+
+	/** Milliseconds a cached application context may be unused before
+	 * it is closed. The default is 0 which means contexts are kept until
+	 * the job is reset. */
+	private long cacheIdleTimeout;
+
+	/** The cache. Created on first use. */
+	private ApplicationContextCache contextCache;
+
 	@Override
 	public void run() {
 		if (beanName == null) {
 			throw new IllegalStateException("No beanName to run.");
 		}
 		
-		ConfigurableApplicationContext applicationContext = 
-				loadApplicationContext();
+		if (cacheSize > 0) {
 		
+			ApplicationContextCache cache = contextCache();
+			Object key = configurationKey();
+
+			ConfigurableApplicationContext applicationContext =
+					cache.acquire(key,
+							createConfigurer(),
+							this::loadApplicationContext);
+			try {
+				runBean(applicationContext);
+			}
+			finally {
+				cache.release(key);
+			}
+		}
+		else {
+			ConfigurableApplicationContext applicationContext =
+					loadApplicationContext();
+			try {
+				runBean(applicationContext);
+			}
+			finally {
+				applicationContext.close();
+			}
+		}
+	}
+
+	/**
+	 * Run the bean.
+	 *
+	 * @param applicationContext The context to get the bean from.
+	 */
+	protected void runBean(ConfigurableApplicationContext applicationContext) {
 		
 		Runnable main = applicationContext.getBean(beanName, 
 				Runnable.class);
 		
 		main.run();
+	}
 		
-		applicationContext.close();
+	/**
+	 * Provide the cache, creating it if necessary.
+	 *
+	 * @return The cache.
+	 */
+	protected synchronized ApplicationContextCache contextCache() {
+		if (contextCache == null) {
+			contextCache = new ApplicationContextCache(
+					cacheSize, cacheIdleTimeout);
+		}
+		return contextCache;
+	}
+
+	/**
+	 * Close any cached application contexts.
+	 */
+	@SoftReset
+	@HardReset
+	@Destroy
+	public synchronized void reset() {
+		if (contextCache != null) {
+			contextCache.close();
+			contextCache = null;
+		}
 	}
 
 	/**
@@ -61,5 +136,42 @@ implements Runnable {
 		this.beanName = beanName;
 	}
 	
+	/**
+	 * Getter for the cache size.
+	 *
+	 * @return The number of contexts that will be cached.
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Setter for the cache size. This takes effect after the next reset.
+	 *
+	 * @param cacheSize The number of contexts to cache. 0 to disable
+	 * caching.
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Getter for the cache idle timeout.
+	 *
+	 * @return The timeout in milliseconds.
+	 */
+	public long getCacheIdleTimeout() {
+		return cacheIdleTimeout;
+	}
+
+	/**
+	 * Setter for the cache idle timeout. This takes effect after the next
+	 * reset.
+	 *
+	 * @param cacheIdleTimeout The timeout in milliseconds. 0 for none.
+	 */
+	public void setCacheIdleTimeout(long cacheIdleTimeout) {
+		this.cacheIdleTimeout = cacheIdleTimeout;
+	}
 	
 }
@@ -1,12 +1,26 @@
 package org.oddjob.spring;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.oddjob.FallibleComponent;
 import org.oddjob.arooa.registry.BeanDirectory;
 import org.oddjob.arooa.registry.BeanDirectoryOwner;
 import org.oddjob.framework.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.ApplicationContext;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.core.io.Resource;
 
 /**
  * An Oddjob job that provides a Spring application
@@ -17,6 +31,25 @@ import org.springframework.context.ConfigurableApplicationContext;
  * to Oddjob properties and Spring beans is identical. The only difference
  * between the two is in the timing of the closing of the application 
  * context. This class closes the application context on stop.
+ * <p>
+ * If async is set the application context is loaded on a background 
+ * thread and start returns straight away. The status property shows when
+ * the context is ready. Lookups of Spring beans made before then wait 
+ * for the context to be ready, up to the readyTimeout. If loading fails 
+ * the exception is passed to Oddjob, which shows the service as having 
+ * failed.
+ * <p>
+ * If watch is set the configuration files are watched for changes. When
+ * a file changes only the beans whose definitions have changed, and the 
+ * beans that depend on them, are recreated. If this isn't possible, for
+ * instance because the context has bean factory post processors, the 
+ * whole application context is loaded again.
+ * <p>
+ * If rebindable is set the service records which Oddjob expressions each
+ * bean definition used. If Oddjob values change, {@link #rebind()} 
+ * resolves again only the definitions that used values that have 
+ * changed, and recreates those beans and the beans that depend on them,
+ * without loading the whole application context again.
  * 
  * @see SpringBeans
  * 
@@ -24,44 +57,474 @@ import org.springframework.context.ConfigurableApplicationContext;
  *
  */
 public class SpringService extends SpringBase
-implements Service, BeanDirectoryOwner {
+implements Service, BeanDirectoryOwner, FallibleComponent {
 	
 	private static final Logger logger = LoggerFactory.getLogger(SpringService.class);
 	
-
+	/**
+	 * The status of the application context.
+	 */
+	public enum Status {
+		
+		/** There is no application context. */
+		STOPPED,
+		
+		/** The application context is being loaded in the background. */
+		STARTING,
+		
+		/** The application context is loaded. */
+		READY,
+		
+		/** The application context failed to load in the background. */
+		FAILED,
+	}
+	
 	/** The resultant ApplicationContext. */
 	private volatile ConfigurableApplicationContext applicationContext;
 	
+	/** If true, the application context is loaded in the background. */
+	private boolean async;
+	
+	/** Milliseconds lookups wait for an application context being loaded
+	 * in the background. The default is 60 seconds. */
+	private long readyTimeout = 60000L;
+	
+	/** The status. */
+	private volatile Status status = Status.STOPPED;
+	
+	/** Provides the beans when loading in the background. */
+	private volatile CompletableFuture<BeanDirectory> pending;
+	
+	/** The directory provided while loading in the background. */
+	private volatile AwaitingBeanDirectory awaiting;
+	
+	/** Publishes the directory for the current application context. */
+	private final BeanDirectoryPublisher publisher = 
+			new BeanDirectoryPublisher();
+	
+	/** If true, the configuration files are watched for changes. */
+	private boolean watch;
+	
+	/** Milliseconds to wait after a file changes for changes to stop
+	 * before reloading. The default is half a second. */
+	private long watchSettleTime = 500L;
+	
+	/** Watches the configuration files. */
+	private ConfigFileWatcher watcher;
+	
+	/** If true, the expressions each bean definition uses are recorded
+	 * so that the beans can be rebound. */
+	private boolean rebindable;
+	
+	/** Told of a failure to load in the background. May be null. */
+	private volatile Consumer<? super Throwable> exceptionListener;
+	
+	/** The configurer last used to load the application context. */
+	private volatile OddjobPropertyConfigurer configurer;
 	
 	@Override
-	public void start() {
+	public synchronized void start() {
+		if (async) {
+			startAsync();
+			return;
+		}
+		
 		logger.info("Loading Application Context.");
 		
 		applicationContext = 
 				loadApplicationContext();	
+		
+		publisher.publish(applicationContext, getArooaSession());
+		
+		status = Status.READY;
+		
+		if (watch) {
+			startWatching();
+		}
 	}
 	
+	/**
+	 * Load the application context on a new thread.
+	 */
+	protected synchronized void startAsync() {
+		
+		logger.info("Loading Application Context in the background.");
+		
+		final CompletableFuture<BeanDirectory> future = 
+				new CompletableFuture<BeanDirectory>();
+		
+		pending = future;
+		awaiting = new AwaitingBeanDirectory(future, readyTimeout);
+		status = Status.STARTING;
+		
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ConfigurableApplicationContext loaded;
+				try {
+					loaded = loadApplicationContext();
+				}
+				catch (RuntimeException | Error e) {
+					logger.error("Failed loading Application Context.", e);
+					Consumer<? super Throwable> listener = null;
+					synchronized (SpringService.this) {
+						if (pending == future) {
+							status = Status.FAILED;
+							listener = exceptionListener;
+						}
+					}
+					future.completeExceptionally(e);
+					if (listener != null) {
+						listener.accept(e);
+					}
+					return;
+				}
+				synchronized (SpringService.this) {
+					if (pending == future) {
+						applicationContext = loaded;
+						status = Status.READY;
+						logger.info("Application Context ready.");
+						future.complete(publisher.publish(
+								loaded, getArooaSession()));
+						if (watch) {
+							startWatching();
+						}
+						return;
+					}
+				}
+				logger.info("Stopped while loading, closing Application Context.");
+				loaded.close();
+			}
+		}, "SpringService-" + this);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Start watching the configuration files.
+	 */
+	protected synchronized void startWatching() {
+		if (watcher != null) {
+			return;
+		}
+		String[] files = getFiles();
+		if (files == null) {
+			logger.warn("Only files can be watched, not watching.");
+			return;
+		}
+		List<Resource> resources = new ArrayList<Resource>();
+		try {
+			for (String file : files) {
+				resources.addAll(Arrays.asList(
+						applicationContext.getResources(file)));
+			}
+			watcher = new ConfigFileWatcher(resources, 
+					new Consumer<List<Resource>>() {
+						@Override
+						public void accept(List<Resource> changed) {
+							filesChanged(changed);
+						}
+					}, watchSettleTime);
+		}
+		catch (IOException e) {
+			logger.error("Failed to watch " + Arrays.toString(files), e);
+			return;
+		}
+		watcher.start();
+	}
+	
+	/**
+	 * Called when configuration files change. The changed definitions are
+	 * reloaded if possible, otherwise the application context is loaded 
+	 * again. A new application context is loaded before the current one 
+	 * is closed, so the beans stay available while it loads. If the 
+	 * changed definitions can't be reloaded, they are put back as they 
+	 * were and the application context is loaded again. If that fails 
+	 * too the current application context is kept.
+	 * 
+	 * @param changed The files that have changed.
+	 */
+	protected synchronized void filesChanged(List<Resource> changed) {
+		ConfigurableApplicationContext current = this.applicationContext;
+		if (current == null) {
+			return;
+		}
+		
+		logger.info("Configuration changed " + changed);
+		
+		try {
+			BeanDefinitionReloader reloader = new BeanDefinitionReloader(
+					(AbstractApplicationContext) current);
+			boolean reloaded = true;
+			for (Resource resource : changed) {
+				if (!reloader.reload(resource)) {
+					reloaded = false;
+					break;
+				}
+			}
+			if (reloaded) {
+				return;
+			}
+		}
+		catch (RuntimeException e) {
+			logger.error("Failed reloading " + changed + ".", e);
+		}
+		
+		loadAgain(current);
+	}
+	
+	/**
+	 * Load the application context again, and close the current one once
+	 * the new one has loaded. If loading fails the current application 
+	 * context is kept.
+	 * 
+	 * @param current The current application context.
+	 * 
+	 * @return true if the application context was loaded again.
+	 */
+	protected boolean loadAgain(ConfigurableApplicationContext current) {
+		
+		logger.info("Loading Application Context again.");
+		
+		OddjobPropertyConfigurer previous = this.configurer;
+		ConfigurableApplicationContext loaded;
+		try {
+			loaded = loadApplicationContext();
+		}
+		catch (RuntimeException e) {
+			logger.error("Failed loading Application Context, " + 
+					"keeping the current one.", e);
+			this.configurer = previous;
+			return false;
+		}
+		
+		applicationContext = loaded;
+		publisher.publish(loaded, getArooaSession());
+		status = Status.READY;
+		
+		logger.info("Closing previous Application Context.");
+		current.close();
+		return true;
+	}
+	
+	/**
+	 * Create a configurer, that records which expressions each bean 
+	 * definition uses if rebindable is set, and remember it so that the
+	 * definitions can be bound to new values later.
+	 */
 	@Override
-	public void stop() {
+	protected OddjobPropertyConfigurer createConfigurer() {
+		OddjobPropertyConfigurer configurer = super.createConfigurer();
+		configurer.setRecordBindings(rebindable);
+		this.configurer = configurer;
+		return configurer;
+	}
+	
+	/**
+	 * Bind the beans to new Oddjob values. The definitions of beans that 
+	 * used Oddjob values that have changed are resolved again from how 
+	 * they were configured, and replace the definitions in the 
+	 * application context. The singletons among these, and any beans that 
+	 * depend on them, are destroyed and created again. Everything else is 
+	 * left as it is. Values resolved in aliases and annotations aren't
+	 * bound again. If the beans can't be created from the new definitions 
+	 * the application context is loaded again instead.
+	 * 
+	 * @return The names of the beans whose definitions were replaced.
+	 * 
+	 * @throws IllegalStateException If there is no application context, or
+	 * it wasn't loaded with rebindable set.
+	 * @throws RuntimeException If the beans can't be created from the new
+	 * definitions and the application context can't be loaded again.
+	 */
+	public synchronized Set<String> rebind() {
+		ConfigurableApplicationContext current = this.applicationContext;
+		OddjobPropertyConfigurer configurer = this.configurer;
+		if (current == null || configurer == null) {
+			throw new IllegalStateException("No Application Context to rebind.");
+		}
+		if (!configurer.isRecordBindings()) {
+			throw new IllegalStateException(
+					"Application Context was not loaded rebindable.");
+		}
+		
+		Map<String, BeanDefinition> definitions = 
+				configurer.rebindDefinitions();
+		
+		if (definitions.isEmpty()) {
+			logger.info("No Oddjob values used by bean definitions have changed.");
+			return Collections.emptySet();
+		}
+		
+		logger.info("Rebinding beans " + definitions.keySet());
+		
+		try {
+			new BeanDefinitionReloader((AbstractApplicationContext) current)
+				.redefine(definitions, Collections.<String>emptyList());
+		}
+		catch (RuntimeException e) {
+			logger.error("Failed rebinding beans " + definitions.keySet() + ".", e);
+			if (!loadAgain(current)) {
+				throw e;
+			}
+		}
+		
+		return new LinkedHashSet<String>(definitions.keySet());
+	}
+	
+	/**
+	 * Accept the listener Oddjob provides to be told of a failure to load 
+	 * the application context in the background.
+	 * 
+	 * @param exceptionListener The listener. May be null.
+	 */
+	@Override
+	public void acceptExceptionListener(
+			Consumer<? super Throwable> exceptionListener) {
+		this.exceptionListener = exceptionListener;
+	}
+	
+	@Override
+	public synchronized void stop() {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
+		publisher.withdraw();
+		awaiting = null;
+		CompletableFuture<BeanDirectory> pending = this.pending;
+		if (pending != null) {
+			this.pending = null;
+			pending.cancel(false);
+		}
 		if (applicationContext != null) {
 			logger.info("Closing Application Context.");
 			applicationContext.close();
 			applicationContext = null;
-		}		
+		}
+		status = Status.STOPPED;
 	}
 	
 	/**
+	 * Provide the beans. The same directory is provided until the service
+	 * is stopped or the application context is loaded again, after which
+	 * a directory provided before fails if used.
+	 * 
 	 * @see BeanDirectoryOwner
 	 */
-	public BeanDirectory provideBeanDirectory() {
-		ApplicationContext applicationContext = this.applicationContext;
-		if (applicationContext == null) {
-			return null;
+	public BulkBeanDirectory provideBeanDirectory() {
+		BeanDirectoryAdaptor current = publisher.getCurrent();
+		if (current == null) {
+			return awaiting;
 		}
 		else {
-			return new BeanDirectoryAdaptor(applicationContext, 
-					getArooaSession());
+			return current;
 		}		
 	}
 
+	/**
+	 * Getter for async.
+	 * 
+	 * @return true if the application context is loaded in the background.
+	 */
+	public boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * Setter for async.
+	 * 
+	 * @param async true to load the application context in the background.
+	 */
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	/**
+	 * Getter for ready timeout.
+	 * 
+	 * @return Milliseconds lookups will wait for a context loading in the
+	 * background.
+	 */
+	public long getReadyTimeout() {
+		return readyTimeout;
+	}
+
+	/**
+	 * Setter for ready timeout.
+	 * 
+	 * @param readyTimeout Milliseconds lookups will wait for a context 
+	 * loading in the background.
+	 */
+	public void setReadyTimeout(long readyTimeout) {
+		this.readyTimeout = readyTimeout;
+	}
+
+	/**
+	 * Getter for watch.
+	 * 
+	 * @return true if the configuration files are watched for changes.
+	 */
+	public boolean isWatch() {
+		return watch;
+	}
+
+	/**
+	 * Setter for watch.
+	 * 
+	 * @param watch true to watch the configuration files for changes.
+	 */
+	public void setWatch(boolean watch) {
+		this.watch = watch;
+	}
+
+	/**
+	 * Getter for watch settle time.
+	 * 
+	 * @return Milliseconds to wait for changes to stop.
+	 */
+	public long getWatchSettleTime() {
+		return watchSettleTime;
+	}
+
+	/**
+	 * Setter for watch settle time.
+	 * 
+	 * @param watchSettleTime Milliseconds to wait for changes to stop 
+	 * before reloading.
+	 */
+	public void setWatchSettleTime(long watchSettleTime) {
+		this.watchSettleTime = watchSettleTime;
+	}
+
+	/**
+	 * Getter for rebindable.
+	 * 
+	 * @return true if the beans can be bound to new Oddjob values.
+	 */
+	public boolean isRebindable() {
+		return rebindable;
+	}
+
+	/**
+	 * Setter for rebindable. If true, the expressions each bean definition
+	 * uses are recorded, along with a copy of each definition that used
+	 * any, so that {@link #rebind()} may be used. This costs a copy of
+	 * every definition while loading, so is off by default. It takes 
+	 * effect the next time the application context is loaded.
+	 * 
+	 * @param rebindable true to allow the beans to be rebound.
+	 */
+	public void setRebindable(boolean rebindable) {
+		this.rebindable = rebindable;
+	}
+
+	/**
+	 * Getter for the status of the application context.
+	 * 
+	 * @return The status. Never null.
+	 */
+	public Status getStatus() {
+		return status;
+	}
 }
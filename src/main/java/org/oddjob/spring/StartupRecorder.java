@@ -0,0 +1,383 @@
+package org.oddjob.spring;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+
+/**
+ * An {@link ApplicationStartup} that keeps the steps Spring reports in
+ * memory so that how long an application context took to load, and
+ * where that time went, can be seen from Oddjob without attaching a
+ * profiler.
+ * <p>
+ * As well as the steps Spring records itself, such as the instantiation
+ * of each bean, {@link SpringBase} records the XML parse and
+ * {@link OddjobPropertyConfigurer} records resolving Oddjob properties.
+ * <p>
+ * Steps are nested by thread, so a bean created while creating another
+ * is a child of it. The self time of a step is its time less the time
+ * of its children, which for beans is the time spent creating that
+ * bean rather than its dependencies.
+ * <p>
+ * Like Spring's <code>BufferingApplicationStartup</code> only a limited
+ * number of steps are kept, so that a context that goes on creating 
+ * prototype beans long after it has loaded doesn't fill the heap. Steps
+ * that end once the recorder is full are counted but not kept.
+ *
+ * @see SpringBase#getStartupReport()
+ */
+public class StartupRecorder implements ApplicationStartup {
+
+	/** The name Spring gives the step for creating a bean. */
+	public static final String BEAN_INSTANTIATE_STEP = "spring.beans.instantiate";
+
+	/** The tag Spring gives the name of the bean being created. */
+	public static final String BEAN_NAME_TAG = "beanName";
+
+	/** The number of steps kept unless another is given. */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/** The maximum number of steps kept. */
+	private final int capacity;
+
+	/** The number of steps kept. */
+	private final AtomicInteger kept = new AtomicInteger();
+
+	/** The number of steps that ended once the recorder was full. */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** Provides step ids. */
+	private final AtomicLong ids = new AtomicLong();
+
+	/** The steps started and not ended on each thread, latest first. */
+	private final ThreadLocal<Deque<Step>> current =
+			new ThreadLocal<Deque<Step>>() {
+		@Override
+		protected Deque<Step> initialValue() {
+			return new ArrayDeque<Step>();
+		}
+	};
+
+	/** Steps that have ended. */
+	private final Queue<Step> ended = new ConcurrentLinkedQueue<Step>();
+
+	/**
+	 * Constructor that keeps up to {@link #DEFAULT_CAPACITY} steps.
+	 */
+	public StartupRecorder() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity The maximum number of steps to keep.
+	 */
+	public StartupRecorder(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException(
+					"Capacity must not be negative: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	@Override
+	public StartupStep start(String name) {
+		Deque<Step> stack = current.get();
+		Step step = new Step(name, ids.incrementAndGet(), stack.peek());
+		stack.push(step);
+		return step;
+	}
+
+	/**
+	 * Provide the steps that have ended, in the order they were started.
+	 *
+	 * @return The steps. Never null.
+	 */
+	public List<Step> getSteps() {
+		List<Step> steps = new ArrayList<Step>(ended);
+		Collections.sort(steps, new Comparator<Step>() {
+			@Override
+			public int compare(Step o1, Step o2) {
+				return Long.compare(o1.id, o2.id);
+			}
+		});
+		return steps;
+	}
+
+	/**
+	 * Provide the beans that took longest to create, by self time.
+	 *
+	 * @param count The maximum number of beans.
+	 *
+	 * @return The bean steps, slowest first. Never null.
+	 */
+	public List<Step> getSlowestBeans(int count) {
+		List<Step> beans = new ArrayList<Step>();
+		for (Step step : ended) {
+			if (BEAN_INSTANTIATE_STEP.equals(step.name)) {
+				beans.add(step);
+			}
+		}
+		Collections.sort(beans, new Comparator<Step>() {
+			@Override
+			public int compare(Step o1, Step o2) {
+				return Long.compare(o2.getSelfNanos(), o1.getSelfNanos());
+			}
+		});
+		return beans.subList(0, Math.min(count, beans.size()));
+	}
+
+	/**
+	 * Provide the number of steps that ended once the recorder was full
+	 * and so were not kept.
+	 *
+	 * @return The number of steps not kept.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Provide a report of all the steps, children indented beneath their
+	 * parents, with the time and self time of each. If steps were not
+	 * kept because the recorder was full the report ends saying how many.
+	 *
+	 * @return The report. Never null.
+	 */
+	public String getReport() {
+		List<Step> steps = getSteps();
+		Map<Long, Integer> depths = new HashMap<Long, Integer>();
+		StringBuilder builder = new StringBuilder();
+		for (Step step : steps) {
+			Integer parentDepth = step.parentId == null ?
+					null : depths.get(step.parentId);
+			int depth = parentDepth == null ? 0 : parentDepth + 1;
+			depths.put(step.id, depth);
+
+			for (int i = 0; i < depth; ++i) {
+				builder.append("  ");
+			}
+			builder.append(step.name);
+			if (!step.tags.isEmpty()) {
+				builder.append(' ').append(step.tags);
+			}
+			builder.append(' ').append(step.getDurationMillis())
+					.append("ms (self ").append(step.getSelfMillis())
+					.append("ms)").append(System.lineSeparator());
+		}
+		long dropped = getDropped();
+		if (dropped > 0) {
+			builder.append(dropped).append(" more steps not recorded.")
+					.append(System.lineSeparator());
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Called when a step ends.
+	 *
+	 * @param step The step.
+	 */
+	void ended(Step step) {
+		Deque<Step> stack = current.get();
+		stack.remove(step);
+		if (stack.isEmpty()) {
+			current.remove();
+		}
+		if (step.parent != null) {
+			step.parent.childNanos.addAndGet(step.durationNanos);
+		}
+		if (kept.incrementAndGet() > capacity) {
+			kept.decrementAndGet();
+			dropped.incrementAndGet();
+			return;
+		}
+		ended.add(step);
+	}
+
+	/**
+	 * A recorded step.
+	 */
+	public class Step implements StartupStep, StartupStep.Tags {
+
+		private final String name;
+
+		private final long id;
+
+		private final Step parent;
+
+		private final Long parentId;
+
+		private final List<StartupStep.Tag> tags = new ArrayList<StartupStep.Tag>();
+
+		private final long startNanos = System.nanoTime();
+
+		private final AtomicLong childNanos = new AtomicLong();
+
+		private volatile long durationNanos = -1;
+
+		Step(String name, long id, Step parent) {
+			this.name = name;
+			this.id = id;
+			this.parent = parent;
+			this.parentId = parent == null ? null : parent.id;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public long getId() {
+			return id;
+		}
+
+		@Override
+		public Long getParentId() {
+			return parentId;
+		}
+
+		@Override
+		public StartupStep tag(String key, String value) {
+			synchronized (tags) {
+				tags.add(new RecordedTag(key, value));
+			}
+			return this;
+		}
+
+		@Override
+		public StartupStep tag(String key, Supplier<String> value) {
+			return tag(key, value.get());
+		}
+
+		@Override
+		public Tags getTags() {
+			return this;
+		}
+
+		@Override
+		public Iterator<StartupStep.Tag> iterator() {
+			synchronized (tags) {
+				return new ArrayList<StartupStep.Tag>(tags).iterator();
+			}
+		}
+
+		/**
+		 * Get the value of a tag.
+		 *
+		 * @param key The tag key.
+		 *
+		 * @return The value of the last tag with the key, or null.
+		 */
+		public String getTag(String key) {
+			String value = null;
+			for (StartupStep.Tag tag : this) {
+				if (tag.getKey().equals(key)) {
+					value = tag.getValue();
+				}
+			}
+			return value;
+		}
+
+		@Override
+		public void end() {
+			if (durationNanos < 0) {
+				durationNanos = System.nanoTime() - startNanos;
+				ended(this);
+			}
+		}
+
+		/**
+		 * Getter for the time the step took.
+		 *
+		 * @return Nanoseconds, or -1 if the step hasn't ended.
+		 */
+		public long getDurationNanos() {
+			return durationNanos;
+		}
+
+		/**
+		 * Getter for the time the step took in milliseconds.
+		 *
+		 * @return Milliseconds, or -1 if the step hasn't ended.
+		 */
+		public long getDurationMillis() {
+			return durationNanos < 0 ? -1 :
+				TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		}
+
+		/**
+		 * Getter for the time the step took less the time taken by
+		 * steps nested within it.
+		 *
+		 * @return Nanoseconds.
+		 */
+		public long getSelfNanos() {
+			return Math.max(0, durationNanos - childNanos.get());
+		}
+
+		/**
+		 * Getter for the self time in milliseconds.
+		 *
+		 * @return Milliseconds.
+		 */
+		public long getSelfMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(getSelfNanos());
+		}
+
+		@Override
+		public String toString() {
+			String beanName = getTag(BEAN_NAME_TAG);
+			return (beanName == null ? name : beanName) +
+					" " + getDurationMillis() + "ms (self " +
+					getSelfMillis() + "ms)";
+		}
+	}
+
+	/**
+	 * A recorded tag.
+	 */
+	static class RecordedTag implements StartupStep.Tag {
+
+		private final String key;
+
+		private final String value;
+
+		RecordedTag(String key, String value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public String getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.standard.StandardArooaSession;
+import org.oddjob.arooa.standard.StandardPropertyLookup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+public class ApplicationContextCacheTest {
+
+	@Test
+	public void testContextReusedUntilValuesChange() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		session.getBeanRegistry().register("biscuit", new Biscuit());
+		
+		Properties props = new Properties();
+		props.setProperty("favourite.apple.colour", "red");
+		
+		session.getPropertyManager().addPropertyLookup(
+				new StandardPropertyLookup(props, "TEST"));
+		
+		SpringBase base = new SpringBase();
+		base.setArooaSession(session);
+		base.setResources(new String[] { 
+				"org/oddjob/spring/SpringBeansTest.spg.xml" });
+		
+		ApplicationContextCache test = new ApplicationContextCache(2, 0);
+		
+		Object key = base.configurationKey();
+		
+		ConfigurableApplicationContext context1 = test.acquire(key, 
+				new OddjobPropertyConfigurer(session), 
+				base::loadApplicationContext);
+		test.release(key);
+		
+		ConfigurableApplicationContext context2 = test.acquire(key, 
+				new OddjobPropertyConfigurer(session), 
+				base::loadApplicationContext);
+		test.release(key);
+		
+		assertSame(context1, context2);
+		assertEquals("red", context1.getBean("apple", Apple.class).getColour());
+		
+		props.setProperty("favourite.apple.colour", "green");
+		
+		ConfigurableApplicationContext context3 = test.acquire(key, 
+				new OddjobPropertyConfigurer(session), 
+				base::loadApplicationContext);
+		test.release(key);
+		
+		assertNotSame(context1, context3);
+		assertEquals(false, context1.isActive());
+		assertEquals("green", context3.getBean("apple", Apple.class).getColour());
+		
+		assertEquals(1, test.size());
+		
+		test.close();
+		
+		assertEquals(false, context3.isActive());
+		assertEquals(0, test.size());
+	}
+	
+	@Test
+	public void testKeyChangesWithHowContextIsLoaded() {
+		
+		SpringBase base = new SpringBase();
+		base.setResources(new String[] { 
+				"org/oddjob/spring/SpringBeansTest.spg.xml" });
+		
+		Set<Object> keys = new HashSet<Object>();
+		keys.add(base.configurationKey());
+		
+		base.setDeferResolution(true);
+		assertTrue(keys.add(base.configurationKey()));
+		base.setParallelResolve(true);
+		assertTrue(keys.add(base.configurationKey()));
+		base.setParallelLoad(true);
+		assertTrue(keys.add(base.configurationKey()));
+		base.setLazyInit(true);
+		assertTrue(keys.add(base.configurationKey()));
+		base.setWarmUp(true);
+		assertTrue(keys.add(base.configurationKey()));
+		base.setWarmUpThreads(2);
+		assertTrue(keys.add(base.configurationKey()));
+		base.setInstantiationThreads(4);
+		assertTrue(keys.add(base.configurationKey()));
+		
+		base.setSlowestCount(3);
+		assertFalse(keys.add(base.configurationKey()));
+	}
+	
+	@Test
+	public void testLoadingOneContextDoesntBlockOthers() 
+	throws InterruptedException, ExecutionException, TimeoutException {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		ApplicationContextCache test = new ApplicationContextCache(2, 0);
+		
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		AtomicInteger slowLoads = new AtomicInteger();
+		
+		CompletableFuture<ConfigurableApplicationContext> slow1 = 
+				CompletableFuture.supplyAsync(() -> test.acquire("slow", 
+						new OddjobPropertyConfigurer(session), configurer -> {
+							slowLoads.incrementAndGet();
+							started.countDown();
+							try {
+								finish.await();
+							}
+							catch (InterruptedException e) {
+								throw new IllegalStateException(e);
+							}
+							GenericApplicationContext context = 
+									new GenericApplicationContext();
+							context.refresh();
+							return context;
+						}));
+		
+		assertEquals(true, started.await(10, TimeUnit.SECONDS));
+		
+		CompletableFuture<ConfigurableApplicationContext> slow2 = 
+				CompletableFuture.supplyAsync(() -> test.acquire("slow", 
+						new OddjobPropertyConfigurer(session), configurer -> {
+							slowLoads.incrementAndGet();
+							GenericApplicationContext context = 
+									new GenericApplicationContext();
+							context.refresh();
+							return context;
+						}));
+		
+		ConfigurableApplicationContext fast = CompletableFuture.supplyAsync(
+				() -> test.acquire("fast", 
+						new OddjobPropertyConfigurer(session), configurer -> {
+							GenericApplicationContext context = 
+									new GenericApplicationContext();
+							context.refresh();
+							return context;
+						})).get(10, TimeUnit.SECONDS);
+		
+		assertEquals(true, fast.isActive());
+		
+		finish.countDown();
+		
+		assertSame(slow1.get(10, TimeUnit.SECONDS), 
+				slow2.get(10, TimeUnit.SECONDS));
+		assertEquals(1, slowLoads.get());
+		
+		test.close();
+	}
+}
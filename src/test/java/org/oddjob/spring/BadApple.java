@@ -0,0 +1,8 @@
+package org.oddjob.spring;
+
+public class BadApple extends Apple {
+
+	public BadApple() {
+		throw new IllegalStateException("Bad apple.");
+	}
+}
@@ -0,0 +1,148 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.oddjob.arooa.standard.StandardArooaSession;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+
+public class BeanDefinitionReloaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	static void write(File file, String appleColour, boolean withCake) 
+	throws IOException {
+		String xml = 
+				"<beans xmlns='http://www.springframework.org/schema/beans'" +
+				" xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'" +
+				" xsi:schemaLocation='http://www.springframework.org/schema/beans" +
+				" http://www.springframework.org/schema/beans/spring-beans.xsd'>" +
+				"<bean id='apple' class='org.oddjob.spring.Apple'>" +
+				"<property name='colour' value='" + appleColour + "'/></bean>" +
+				"<bean id='biscuit' class='org.oddjob.spring.Biscuit'/>" +
+				"<bean id='eater' class='org.oddjob.spring.SnackEater'>" +
+				"<property name='apple' ref='apple'/>" +
+				"<property name='biscuit' ref='biscuit'/></bean>" +
+				(withCake ? "<bean id='cake' class='org.oddjob.spring.Biscuit'/>" : "") +
+				"</beans>";
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testOnlyChangedBeansAndDependentsRecreated() throws IOException {
+		
+		File file = folder.newFile("beans.xml");
+		write(file, "red", true);
+		
+		SpringBase base = new SpringBase();
+		base.setArooaSession(new StandardArooaSession());
+		base.setFiles(new String[] { "file:" + file.getAbsolutePath() });
+		
+		ConfigurableApplicationContext applicationContext = 
+				base.loadApplicationContext();
+		
+		Biscuit biscuit = applicationContext.getBean("biscuit", Biscuit.class);
+		SnackEater eater = applicationContext.getBean("eater", SnackEater.class);
+		
+		write(file, "green", false);
+		
+		BeanDefinitionReloader test = new BeanDefinitionReloader(
+				(AbstractApplicationContext) applicationContext);
+		
+		assertTrue(test.reload(applicationContext.getResource(
+				"file:" + file.getAbsolutePath())));
+		
+		assertEquals("green", 
+				applicationContext.getBean("apple", Apple.class).getColour());
+		assertSame(biscuit, applicationContext.getBean("biscuit"));
+		
+		SnackEater newEater = applicationContext.getBean(
+				"eater", SnackEater.class);
+		assertNotSame(eater, newEater);
+		assertEquals("green", newEater.getApple().getColour());
+		
+		assertFalse(applicationContext.containsBean("cake"));
+		
+		applicationContext.close();
+	}
+	
+	@Test
+	public void testBeanFromOtherResourceNotReloaded() throws IOException {
+		
+		File file = folder.newFile("beans.xml");
+		write(file, "red", false);
+		
+		SpringBase base = new SpringBase();
+		base.setArooaSession(new StandardArooaSession());
+		base.setFiles(new String[] { "file:" + file.getAbsolutePath() });
+		
+		ConfigurableApplicationContext applicationContext = 
+				base.loadApplicationContext();
+
+		File other = folder.newFile("other.xml");
+		write(other, "green", false);
+		
+		BeanDefinitionReloader test = new BeanDefinitionReloader(
+				(AbstractApplicationContext) applicationContext);
+		
+		assertFalse(test.reload(new FileSystemResource(other)));
+		
+		applicationContext.close();
+	}
+	
+	@Test
+	public void testDefinitionsRestoredWhenBeanFails() throws IOException {
+		
+		File file = folder.newFile("beans.xml");
+		write(file, "red", false);
+		
+		SpringBase base = new SpringBase();
+		base.setArooaSession(new StandardArooaSession());
+		base.setFiles(new String[] { "file:" + file.getAbsolutePath() });
+		
+		ConfigurableApplicationContext applicationContext = 
+				base.loadApplicationContext();
+		
+		BeanDefinitionReloader test = new BeanDefinitionReloader(
+				(AbstractApplicationContext) applicationContext);
+		
+		try {
+			test.redefine(Collections.singletonMap("apple", 
+					new RootBeanDefinition(BadApple.class)),
+					Collections.singleton("biscuit"));
+			fail("Bad apple expected.");
+		}
+		catch (BeanCreationException e) {
+			// expected
+		}
+		
+		Apple apple = applicationContext.getBean("apple", Apple.class);
+		assertFalse(apple instanceof BadApple);
+		assertEquals("red", apple.getColour());
+		
+		SnackEater eater = applicationContext.getBean(
+				"eater", SnackEater.class);
+		assertSame(apple, eater.getApple());
+		assertSame(applicationContext.getBean("biscuit"), eater.getBiscuit());
+		
+		applicationContext.close();
+	}
+}
@@ -0,0 +1,125 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.FileCopyUtils;
+
+public class BeanDefinitionSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		
+		List<Resource> sources = Collections.<Resource>singletonList(
+				new ClassPathResource("org/oddjob/spring/SpringBeansTest.spg.xml"));
+		
+		DefaultListableBeanFactory parsed = new DefaultListableBeanFactory();
+		new XmlBeanDefinitionReader(parsed).loadBeanDefinitions(
+				sources.get(0));
+		
+		File file = new File(folder.getRoot(), "test.bds");
+		
+		assertEquals(true, new BeanDefinitionSnapshot(file, sources).save(parsed));
+		
+		DefaultListableBeanFactory loaded = new DefaultListableBeanFactory();
+		
+		assertEquals(true, new BeanDefinitionSnapshot(file, sources).load(loaded));
+		
+		assertEquals(Arrays.asList(parsed.getBeanDefinitionNames()),
+				Arrays.asList(loaded.getBeanDefinitionNames()));
+		
+		for (String name : parsed.getBeanDefinitionNames()) {
+			assertEquals(parsed.getBeanDefinition(name).getPropertyValues(), 
+					loaded.getBeanDefinition(name).getPropertyValues());
+			assertEquals(parsed.getBeanDefinition(name).getBeanClassName(), 
+					loaded.getBeanDefinition(name).getBeanClassName());
+		}
+	}
+	
+	@Test
+	public void testSnapshotDiscardedWhenSourceChanges() throws Exception {
+		
+		File xml = folder.newFile("beans.xml");
+		FileCopyUtils.copy(new ClassPathResource(
+				"org/oddjob/spring/BeanDirectoryAdaptorTest.spg.xml").getInputStream(), 
+				new FileOutputStream(xml));
+		
+		List<Resource> sources = Collections.<Resource>singletonList(
+				new FileSystemResource(xml));
+		
+		DefaultListableBeanFactory parsed = new DefaultListableBeanFactory();
+		new XmlBeanDefinitionReader(parsed).loadBeanDefinitions(
+				sources.get(0));
+		
+		File file = new File(folder.getRoot(), "test.bds");
+		
+		new BeanDefinitionSnapshot(file, sources).save(parsed);
+		
+		assertEquals(true, file.exists());
+		
+		FileCopyUtils.copy(new ClassPathResource(
+				"org/oddjob/spring/SpringBeansTest.spg.xml").getInputStream(), 
+				new FileOutputStream(xml));
+		
+		assertEquals(false, new BeanDefinitionSnapshot(file, sources).load(
+				new DefaultListableBeanFactory()));
+		
+		assertEquals(false, file.exists());
+	}
+	
+	@Test
+	public void testSnapshotDiscardedWhenProfilesChange() throws Exception {
+		
+		List<Resource> sources = Collections.<Resource>singletonList(
+				new ClassPathResource("org/oddjob/spring/SpringBeansTest.spg.xml"));
+		
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.setActiveProfiles("a", "b");
+		
+		List<String> profiles = BeanDefinitionSnapshot.profiles(environment);
+		
+		environment.setActiveProfiles("b", "a");
+		
+		assertEquals(profiles, BeanDefinitionSnapshot.profiles(environment));
+		
+		DefaultListableBeanFactory parsed = new DefaultListableBeanFactory();
+		new XmlBeanDefinitionReader(parsed).loadBeanDefinitions(
+				sources.get(0));
+		
+		File file = new File(folder.getRoot(), "test.bds");
+		
+		assertEquals(true, new BeanDefinitionSnapshot(
+				file, sources, profiles).save(parsed));
+		
+		environment.setActiveProfiles("a");
+		
+		List<String> changed = BeanDefinitionSnapshot.profiles(environment);
+		
+		assertNotEquals(
+				BeanDefinitionSnapshot.fileNameFor(Arrays.asList("x"), profiles),
+				BeanDefinitionSnapshot.fileNameFor(Arrays.asList("x"), changed));
+		
+		assertEquals(false, new BeanDefinitionSnapshot(
+				file, sources, changed).load(new DefaultListableBeanFactory()));
+		
+		assertEquals(false, file.exists());
+	}
+}
@@ -2,6 +2,10 @@ package org.oddjob.spring;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
 import org.junit.Test;
 import org.oddjob.arooa.ArooaSession;
 import org.oddjob.arooa.convert.ArooaConversionException;
@@ -65,4 +69,34 @@ public class BeanDirectoryAdaptorTest {
 		assertEquals(new Integer(42), 
 				test.lookup("my-bean.myNumberAsString", int.class));
 	}
+	
+	@Test
+	public void testLookupAll() throws ArooaConversionException {
+		
+		ConfigurableApplicationContext applicationContext = 
+				new ClassPathXmlApplicationContext(
+				"org/oddjob/spring/BeanDirectoryAdaptorTest.spg.xml");
+		
+		BeanDirectoryAdaptor test = new BeanDirectoryAdaptor(
+				applicationContext, new StandardArooaSession());
+		
+		Map<String, Object> values = test.lookupAll(Arrays.asList(
+				"my-bean.myString", "my-bean.myInteger", "my-bean"));
+		
+		assertEquals(Arrays.asList("my-bean.myString", "my-bean.myInteger", 
+				"my-bean"), new ArrayList<String>(values.keySet()));
+		assertEquals("Hello", values.get("my-bean.myString"));
+		assertEquals(42, values.get("my-bean.myInteger"));
+		assertEquals(applicationContext.getBean("my-bean"), 
+				values.get("my-bean"));
+		
+		Map<String, Integer> numbers = test.lookupAll(Arrays.asList(
+				"my-bean.myInteger", "my-bean.myNumberAsString"), 
+				Integer.class);
+		
+		assertEquals(new Integer(42), numbers.get("my-bean.myInteger"));
+		assertEquals(new Integer(42), numbers.get("my-bean.myNumberAsString"));
+		
+		applicationContext.close();
+	}
 }
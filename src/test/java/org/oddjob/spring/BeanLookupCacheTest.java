@@ -0,0 +1,107 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.oddjob.arooa.standard.StandardArooaSession;
+import org.oddjob.arooa.registry.PathBreakdown;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+public class BeanLookupCacheTest {
+
+	@Test
+	public void testSingletonsCachedUntilClosed() {
+		
+		GenericApplicationContext applicationContext = 
+				new GenericApplicationContext();
+		
+		RootBeanDefinition prototype = new RootBeanDefinition(Apple.class);
+		prototype.setScope(RootBeanDefinition.SCOPE_PROTOTYPE);
+		
+		applicationContext.registerBeanDefinition("apple", 
+				new RootBeanDefinition(Apple.class));
+		applicationContext.registerBeanDefinition("fresh-apple", prototype);
+		applicationContext.refresh();
+		
+		BeanLookupCache test = BeanLookupCache.forContext(applicationContext);
+		
+		assertSame(test, BeanLookupCache.forContext(applicationContext));
+		
+		PathBreakdown breakdown = test.breakdown("apple.colour");
+		assertEquals("apple", breakdown.getId());
+		assertSame(breakdown, test.breakdown("apple.colour"));
+		
+		assertSame(applicationContext.getBean("apple"), test.bean("apple"));
+		assertNotSame(test.bean("fresh-apple"), test.bean("fresh-apple"));
+		
+		applicationContext.close();
+		
+		assertNotSame(test, BeanLookupCache.forContext(applicationContext));
+	}
+	
+	@Test
+	public void testContextNeverClosedCanBeCollected() throws InterruptedException {
+		
+		WeakReference<GenericApplicationContext> ref = cachedContext();
+		
+		for (int i = 0; i < 20 && ref.get() != null; ++i) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		
+		assertNull(ref.get());
+	}
+	
+	private static WeakReference<GenericApplicationContext> cachedContext() {
+		
+		GenericApplicationContext applicationContext = 
+				new GenericApplicationContext();
+		applicationContext.registerBeanDefinition("apple", 
+				new RootBeanDefinition(Apple.class));
+		applicationContext.refresh();
+		
+		BeanLookupCache.forContext(applicationContext).bean("apple");
+		
+		return new WeakReference<GenericApplicationContext>(applicationContext);
+	}
+	
+	@Test
+	public void testAllByTypeDoesNotCreateOtherLazyBeans() {
+		
+		GenericApplicationContext applicationContext = 
+				new GenericApplicationContext();
+		
+		RootBeanDefinition lazy = new RootBeanDefinition(Biscuit.class);
+		lazy.setLazyInit(true);
+		
+		applicationContext.registerBeanDefinition("apple", 
+				new RootBeanDefinition(Apple.class));
+		applicationContext.registerBeanDefinition("biscuit", lazy);
+		applicationContext.refresh();
+		
+		BeanDirectoryAdaptor test = new BeanDirectoryAdaptor(
+				applicationContext, new StandardArooaSession());
+		
+		List<Apple> apples = new ArrayList<Apple>();
+		for (Apple apple : test.getAllByType(Apple.class)) {
+			apples.add(apple);
+		}
+		
+		assertEquals(1, apples.size());
+		assertSame(applicationContext.getBean("apple"), apples.get(0));
+		
+		assertFalse(applicationContext.getBeanFactory().containsSingleton(
+				"biscuit"));
+		
+		applicationContext.close();
+	}
+}
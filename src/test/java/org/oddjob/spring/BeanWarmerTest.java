@@ -0,0 +1,96 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+public class BeanWarmerTest {
+
+	@Test
+	public void testLazyThenWarmedUp() throws InterruptedException {
+		
+		ClassPathXmlApplicationContext applicationContext = 
+				new ClassPathXmlApplicationContext(new String[] {
+						"org/oddjob/spring/ParallelBeanDefinitionLoaderTest1.spg.xml" },
+						false);
+		
+		LazyInitPostProcessor lazyInit = new LazyInitPostProcessor();
+		
+		applicationContext.addBeanFactoryPostProcessor(lazyInit);
+		applicationContext.refresh();
+		
+		ConfigurableListableBeanFactory beanFactory = 
+				applicationContext.getBeanFactory();
+		
+		assertEquals(Arrays.asList("apple", "org.oddjob.spring.Apple#0"), 
+				lazyInit.getMadeLazy());
+		
+		assertEquals(false, beanFactory.containsSingleton("apple"));
+		assertEquals(false, beanFactory.containsSingleton(
+				"org.oddjob.spring.Apple#0"));
+		
+		BeanWarmer test = new BeanWarmer(beanFactory, 
+				lazyInit.getMadeLazy(), 1);
+		test.start();
+		
+		assertEquals(true, test.awaitFinished(10000));
+		
+		assertEquals(true, beanFactory.containsSingleton("apple"));
+		assertEquals(true, beanFactory.containsSingleton(
+				"org.oddjob.spring.Apple#0"));
+		assertEquals(0, test.getRemaining());
+		
+		applicationContext.close();
+	}
+	
+	public static class Smart implements SmartInitializingSingleton {
+		
+		final AtomicInteger calls = new AtomicInteger();
+		
+		@Override
+		public void afterSingletonsInstantiated() {
+			calls.incrementAndGet();
+		}
+	}
+	
+	@Test
+	public void testSmartSingletonsCalledBackOnceWarm() 
+	throws InterruptedException {
+		
+		GenericApplicationContext applicationContext = 
+				new GenericApplicationContext();
+		applicationContext.registerBeanDefinition("early", 
+				new RootBeanDefinition(Smart.class));
+		applicationContext.registerBeanDefinition("warmed", 
+				new RootBeanDefinition(Smart.class));
+		
+		LazyInitPostProcessor lazyInit = new LazyInitPostProcessor();
+		
+		applicationContext.addBeanFactoryPostProcessor(lazyInit);
+		applicationContext.refresh();
+		
+		Smart early = applicationContext.getBean("early", Smart.class);
+		
+		assertEquals(0, early.calls.get());
+		
+		BeanWarmer test = new BeanWarmer(applicationContext.getBeanFactory(), 
+				lazyInit.getMadeLazy(), 2);
+		test.start();
+		
+		assertEquals(true, test.awaitFinished(10000));
+		
+		assertEquals(1, early.calls.get());
+		assertEquals(1, applicationContext.getBean(
+				"warmed", Smart.class).calls.get());
+		
+		applicationContext.close();
+	}
+}
@@ -0,0 +1,108 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.oddjob.arooa.convert.ArooaConversionException;
+import org.oddjob.arooa.convert.ArooaConverter;
+import org.oddjob.arooa.convert.ConversionFailedException;
+import org.oddjob.arooa.convert.ConversionPath;
+import org.oddjob.arooa.convert.NoConversionAvailableException;
+import org.oddjob.arooa.standard.StandardArooaSession;
+
+public class CachingConverterTest {
+
+	@Test
+	public void testConversionsAndNoConversion() throws ArooaConversionException {
+		
+		CachingConverter test = new CachingConverter(
+				new StandardArooaSession().getTools().getArooaConverter());
+		
+		assertEquals(new Integer(42), test.convert("42", Integer.class));
+		assertEquals(new Integer(7), test.convert("7", Integer.class));
+		assertEquals(new Integer(42), test.convert("42", int.class));
+		assertEquals(null, test.convert(null, Integer.class));
+		
+		ArooaConversionException first = null;
+		try {
+			test.convert(new Biscuit(), Apple.class);
+			fail("No conversion expected.");
+		}
+		catch (ArooaConversionException e) {
+			first = e;
+		}
+		
+		try {
+			test.convert(new Biscuit(), Apple.class);
+			fail("No conversion expected.");
+		}
+		catch (ArooaConversionException e) {
+			assertEquals(first.getClass(), e.getClass());
+			assertEquals(first.getMessage(), e.getMessage());
+			assertSame(first, e.getCause());
+		}
+	}
+	
+	@Test
+	public void testFailedConversionKeepsCause() throws ArooaConversionException {
+		
+		CachingConverter test = new CachingConverter(
+				new StandardArooaSession().getTools().getArooaConverter());
+		
+		for (int i = 0; i < 2; ++i) {
+			try {
+				test.convert("not a number", Integer.class);
+				fail("Conversion failure expected.");
+			}
+			catch (ArooaConversionException e) {
+				assertNotNull(e.getCause());
+			}
+		}
+	}
+	
+	static class CountingConverter implements ArooaConverter {
+		
+		final ArooaConverter converter = 
+				new StandardArooaSession().getTools().getArooaConverter();
+		
+		final AtomicInteger searches = new AtomicInteger();
+		
+		@Override
+		public <F, T> ConversionPath<F, T> findConversion(Class<F> from,
+				Class<T> to) {
+			searches.incrementAndGet();
+			return converter.findConversion(from, to);
+		}
+		
+		@Override
+		public <T> T convert(Object from, Class<T> required)
+		throws NoConversionAvailableException, ConversionFailedException {
+			return converter.convert(from, required);
+		}
+	}
+	
+	@Test
+	public void testNoConversionSearchedForOnce() {
+		
+		CountingConverter counting = new CountingConverter();
+		
+		CachingConverter test = new CachingConverter(counting);
+		
+		for (int i = 0; i < 5; ++i) {
+			try {
+				test.convert(new Biscuit(), Apple.class);
+				fail("No conversion expected.");
+			}
+			catch (ArooaConversionException e) {
+				// expected
+			}
+		}
+		
+		assertEquals(1, counting.searches.get());
+	}
+}
@@ -0,0 +1,95 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.oddjob.arooa.reflect.PropertyAccessor;
+import org.oddjob.arooa.standard.StandardArooaSession;
+
+public class CompiledPropertyGettersTest {
+
+	public static class Fruit {
+		
+		public String getName() {
+			return "apple";
+		}
+		
+		public boolean isRipe() {
+			return true;
+		}
+		
+		public String[] getColours() {
+			return new String[] { "red", "green" };
+		}
+		
+		public String getRot() throws Exception {
+			throw new Exception("Rotten");
+		}
+		
+		public String getBruise() {
+			throw new IllegalStateException("Bruised");
+		}
+	}
+	
+	@Test
+	public void testCompiledAndFallback() {
+		
+		CompiledPropertyGetters test = new CompiledPropertyGetters(
+				new StandardArooaSession().getTools().getPropertyAccessor());
+		
+		Fruit fruit = new Fruit();
+		
+		assertEquals("apple", test.getProperty(fruit, "name"));
+		assertEquals(true, test.getProperty(fruit, "ripe"));
+		
+		assertSame(CompiledPropertyGetters.getter(Fruit.class, "name"), 
+				CompiledPropertyGetters.getter(Fruit.class, "name"));
+		
+		assertEquals(Arrays.asList("red", "green"), Arrays.asList(
+				(String[]) test.getProperty(fruit, "colours")));
+		
+		assertEquals(false, CompiledPropertyGetters.isSimple("colours[1]"));
+	}
+	
+	@Test
+	public void testMapsNotCompiled() {
+		
+		assertSame(CompiledPropertyGetters.NONE, 
+				CompiledPropertyGetters.getter(HashMap.class, "empty"));
+	}
+	
+	@Test
+	public void testFailuresReportedAsByFallback() {
+		
+		PropertyAccessor fallback = 
+				new StandardArooaSession().getTools().getPropertyAccessor();
+		
+		CompiledPropertyGetters test = new CompiledPropertyGetters(fallback);
+		
+		for (String property : new String[] { "rot", "bruise" }) {
+			
+			RuntimeException expected = null;
+			try {
+				fallback.getProperty(new Fruit(), property);
+				fail("Expected to fail.");
+			}
+			catch (RuntimeException e) {
+				expected = e;
+			}
+			
+			try {
+				test.getProperty(new Fruit(), property);
+				fail("Expected to fail.");
+			}
+			catch (RuntimeException e) {
+				assertEquals(expected.getClass(), e.getClass());
+				assertEquals(expected.getMessage(), e.getMessage());
+			}
+		}
+	}
+}
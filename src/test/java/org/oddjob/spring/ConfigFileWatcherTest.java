@@ -0,0 +1,60 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class ConfigFileWatcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	static void write(File file, String text) throws IOException {
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testOnlyWatchedFilesReported() 
+	throws IOException, InterruptedException {
+		
+		File watched = folder.newFile("beans.xml");
+		File other = folder.newFile("other.xml");
+		
+		Resource resource = new FileSystemResource(watched);
+		
+		BlockingQueue<List<Resource>> changes = 
+				new LinkedBlockingQueue<List<Resource>>();
+		
+		ConfigFileWatcher test = new ConfigFileWatcher(
+				Collections.singletonList(resource), changes::add, 100L);
+		test.start();
+		try {
+			write(other, "other");
+			write(watched, "one");
+			write(watched, "two");
+			
+			List<Resource> changed = changes.poll(30, TimeUnit.SECONDS);
+			
+			assertNotNull("No change reported.", changed);
+			assertEquals(Collections.singletonList(resource), changed);
+		}
+		finally {
+			test.close();
+		}
+	}
+}
@@ -1,9 +1,11 @@
 package org.oddjob.spring;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 import org.oddjob.arooa.ArooaSession;
@@ -192,4 +194,172 @@ public class OddjobBeanFactoryTest {
 		}		
 	}
 
+	@Test
+	public void testRemembersDuringRefresh() {
+		
+		String bean = new String("A");
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		session.getBeanRegistry().register("my-bean", bean);
+		
+		OddjobBeanFactory test = new OddjobBeanFactory(session);
+		
+		OddjobBeanFactory.RefreshCache refresh = test.beginRefresh();
+		
+		assertEquals(true, test.isRefreshing());
+		assertEquals(bean, test.getBean(String.class));
+		assertEquals(String.class, test.getType("my-bean"));
+		
+		session.getBeanRegistry().register("another-bean", new String("B"));
+		
+		assertEquals(bean, test.getBean(String.class));
+		
+		test.endRefresh(refresh);
+		
+		assertEquals(false, test.isRefreshing());
+		
+		try {
+			test.getBean(String.class);		
+			fail("There are two beans of this type once the refresh ends.");
+		}
+		catch (NoSuchBeanDefinitionException e) {
+			// expected.
+		}
+	}
+	@Test
+	public void testMissesRememberedDuringRefresh() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		OddjobBeanFactory test = new OddjobBeanFactory(session);
+		
+		assertNull(test.findBean("my-bean"));
+		
+		OddjobBeanFactory.RefreshCache refresh = test.beginRefresh();
+		
+		assertEquals(false, test.containsBean("my-bean"));
+		
+		session.getBeanRegistry().register("my-bean", "A");
+		
+		assertNull(test.findBean("my-bean"));
+		
+		try {
+			test.getBean("my-bean");		
+			fail("The miss should be remembered.");
+		}
+		catch (NoSuchBeanDefinitionException e) {
+			assertEquals(0, e.getStackTrace().length);
+		}
+		
+		test.endRefresh(refresh);
+		
+		assertEquals("A", test.findBean("my-bean"));
+		assertEquals(true, test.containsBean("my-bean"));
+	}
+	@Test
+	public void testOverlappingRefreshesDontShare() throws Exception {
+		
+		String bean = new String("A");
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		session.getBeanRegistry().register("my-bean", bean);
+		
+		final OddjobBeanFactory test = new OddjobBeanFactory(session);
+		
+		OddjobBeanFactory.RefreshCache first = test.beginRefresh();
+		
+		assertEquals(bean, test.getBean(String.class));
+		
+		session.getBeanRegistry().register("another-bean", new String("B"));
+		
+		// A second refresh on another thread while the first is in progress.
+		final AtomicReference<Object> result = new AtomicReference<Object>();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				OddjobBeanFactory.RefreshCache second = test.beginRefresh();
+				try {
+					result.set(test.getBean(String.class));
+				}
+				catch (NoSuchBeanDefinitionException e) {
+					result.set(e);
+				}
+				finally {
+					test.endRefresh(second);
+				}
+			}
+		});
+		thread.start();
+		thread.join();
+		
+		assertEquals(true, 
+				result.get() instanceof NoSuchBeanDefinitionException);
+		
+		// A nested refresh on this thread starts afresh too.
+		OddjobBeanFactory.RefreshCache nested = test.beginRefresh();
+		
+		try {
+			test.getBean(String.class);		
+			fail("There are two beans of this type for a new refresh.");
+		}
+		catch (NoSuchBeanDefinitionException e) {
+			// expected.
+		}
+		
+		test.endRefresh(nested);
+		
+		// The first refresh still has what it remembered.
+		assertEquals(bean, test.getBean(String.class));
+		
+		test.endRefresh(first);
+		
+		assertEquals(false, test.isRefreshing());
+	}
+	@Test
+	public void testMissesNotSharedBetweenRefreshes() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		OddjobBeanFactory test = new OddjobBeanFactory(session);
+		
+		OddjobBeanFactory.RefreshCache first = test.beginRefresh();
+		
+		assertNull(test.findBean("my-bean"));
+		
+		session.getBeanRegistry().register("my-bean", "42");
+		
+		OddjobBeanFactory.RefreshCache second = test.beginRefresh();
+		
+		assertEquals("42", test.getBean("my-bean"));
+		
+		test.endRefresh(second);
+		test.endRefresh(first);
+	}
+	
+	@Test
+	public void testTypedMissNotRemembered() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		OddjobBeanFactory test = new OddjobBeanFactory(session);
+		
+		OddjobBeanFactory.RefreshCache refresh = test.beginRefresh();
+		
+		try {
+			test.getBean("my-bean", String.class);
+			fail("No bean yet.");
+		}
+		catch (NoSuchBeanDefinitionException e) {
+			// expected.
+		}
+		
+		session.getBeanRegistry().register("my-bean", "42");
+		
+		assertEquals("42", test.getBean("my-bean"));
+		assertEquals(true, test.containsBean("my-bean"));
+		
+		test.endRefresh(refresh);
+	}
 }
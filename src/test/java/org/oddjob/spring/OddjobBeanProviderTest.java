@@ -0,0 +1,103 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.standard.StandardArooaSession;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.NoUniqueBeanDefinitionException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+
+public class OddjobBeanProviderTest {
+
+	public static class Fruit implements Ordered {
+		
+		private final String name;
+		
+		private final int order;
+		
+		public Fruit(String name, int order) {
+			this.name = name;
+			this.order = order;
+		}
+		
+		@Override
+		public int getOrder() {
+			return order;
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+	
+	@Test
+	public void testLazyLookup() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		OddjobBeanFactory factory = new OddjobBeanFactory(session);
+		
+		ObjectProvider<Fruit> test = factory.getBeanProvider(Fruit.class);
+		
+		assertNull(test.getIfAvailable());
+		assertNull(test.getIfUnique());
+		
+		try {
+			test.getObject();
+			fail("No bean yet.");
+		}
+		catch (NoSuchBeanDefinitionException e) {
+			// expected.
+		}
+		
+		Fruit apple = new Fruit("apple", 2);
+		session.getBeanRegistry().register("apple", apple);
+		
+		assertEquals(apple, test.getIfAvailable());
+		assertEquals(apple, test.getIfUnique());
+		assertEquals(apple, test.getObject());
+		
+		session.getBeanRegistry().register("orange", new Fruit("orange", 1));
+		
+		assertNull(test.getIfUnique());
+		
+		try {
+			test.getIfAvailable();
+			fail("Two beans now.");
+		}
+		catch (NoUniqueBeanDefinitionException e) {
+			// expected.
+		}
+	}
+	
+	@Test
+	public void testOrderedStream() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		session.getBeanRegistry().register("apple", new Fruit("apple", 3));
+		session.getBeanRegistry().register("orange", new Fruit("orange", 1));
+		session.getBeanRegistry().register("pear", new Fruit("pear", 2));
+		session.getBeanRegistry().register("other", "Not a fruit");
+		
+		OddjobBeanFactory factory = new OddjobBeanFactory(session);
+		
+		ObjectProvider<Fruit> test = factory.getBeanProvider(Fruit.class);
+		
+		assertEquals(3, test.stream().count());
+		
+		assertEquals(Arrays.asList("orange", "pear", "apple"), 
+				test.orderedStream()
+					.map(Object::toString)
+					.collect(Collectors.toList()));
+	}
+}
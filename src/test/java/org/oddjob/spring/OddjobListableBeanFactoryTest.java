@@ -0,0 +1,236 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.oddjob.arooa.standard.StandardArooaSession;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+public class OddjobListableBeanFactoryTest {
+
+	public static class Slow implements InitializingBean {
+		
+		static final List<String> created = 
+				Collections.synchronizedList(new ArrayList<String>());
+		
+		private String name;
+		
+		private Slow other;
+		
+		public void setName(String name) {
+			this.name = name;
+		}
+		
+		public void setOther(Slow other) {
+			this.other = other;
+		}
+		
+		@Override
+		public void afterPropertiesSet() throws Exception {
+			Thread.sleep(50);
+			created.add(name);
+		}
+	}
+	
+	static RootBeanDefinition definition(String name, String other) {
+		RootBeanDefinition definition = new RootBeanDefinition(Slow.class);
+		definition.getPropertyValues().add("name", name);
+		if (other != null) {
+			definition.getPropertyValues().add("other", 
+					new RuntimeBeanReference(other));
+		}
+		return definition;
+	}
+	
+	@Test
+	public void testParallelInstantiationKeepsDependencyOrder() {
+		
+		Slow.created.clear();
+		
+		OddjobListableBeanFactory beanFactory = new OddjobListableBeanFactory();
+		beanFactory.setInstantiationThreads(4);
+		
+		GenericApplicationContext applicationContext = 
+				new GenericApplicationContext(beanFactory);
+		
+		applicationContext.registerBeanDefinition("a", definition("a", "b"));
+		applicationContext.registerBeanDefinition("b", definition("b", "c"));
+		applicationContext.registerBeanDefinition("c", definition("c", null));
+		applicationContext.registerBeanDefinition("x", definition("x", "y"));
+		applicationContext.registerBeanDefinition("y", definition("y", "x"));
+		applicationContext.registerBeanDefinition("z", definition("z", null));
+		
+		applicationContext.refresh();
+		
+		List<String> created = new ArrayList<String>(Slow.created);
+		
+		assertEquals(6, created.size());
+		
+		assertTrue(created.indexOf("c") < created.indexOf("b"));
+		assertTrue(created.indexOf("b") < created.indexOf("a"));
+		
+		Slow x = applicationContext.getBean("x", Slow.class);
+		Slow y = applicationContext.getBean("y", Slow.class);
+		
+		assertSame(y, x.other);
+		assertSame(x, y.other);
+		
+		applicationContext.close();
+	}
+	
+	@Test
+	public void testBeanNameForSingleton() {
+		
+		OddjobListableBeanFactory beanFactory = new OddjobListableBeanFactory();
+		
+		GenericApplicationContext applicationContext = 
+				new GenericApplicationContext(beanFactory);
+		applicationContext.registerBeanDefinition("apple", 
+				new RootBeanDefinition(Apple.class));
+		applicationContext.registerBeanDefinition("biscuit", 
+				new RootBeanDefinition(Biscuit.class));
+		applicationContext.refresh();
+		
+		Object apple = applicationContext.getBean("apple");
+		Object biscuit = applicationContext.getBean("biscuit");
+		
+		BeanDirectoryAdaptor adaptor = new BeanDirectoryAdaptor(
+				applicationContext, new StandardArooaSession());
+		
+		assertEquals("apple", adaptor.getIdFor(apple));
+		assertEquals("biscuit", beanFactory.getBeanNameFor(biscuit));
+		assertNull(beanFactory.getBeanNameFor(new Apple()));
+		
+		beanFactory.destroySingleton("apple");
+		
+		assertNull(beanFactory.getBeanNameFor(apple));
+		
+		applicationContext.close();
+		
+		assertNull(beanFactory.getBeanNameFor(biscuit));
+	}
+	
+	@Test
+	public void testEachDeferredBeanUsesItsOwnResolver() {
+		
+		OddjobListableBeanFactory beanFactory = new OddjobListableBeanFactory();
+		beanFactory.registerBeanDefinition("apple", 
+				new RootBeanDefinition(Apple.class));
+		beanFactory.registerBeanDefinition("biscuit", 
+				new RootBeanDefinition(Biscuit.class));
+		
+		List<String> resolved = new ArrayList<String>();
+		
+		beanFactory.deferResolution(Collections.singleton("apple"), 
+				name -> resolved.add("first " + name));
+		beanFactory.deferResolution(Collections.singleton("biscuit"), 
+				name -> resolved.add("second " + name));
+		
+		beanFactory.getBean("biscuit");
+		beanFactory.getBean("apple");
+		
+		assertEquals(Arrays.asList("second biscuit", "first apple"), resolved);
+	}
+	
+	@Test
+	public void testDeferringTwiceFails() {
+		
+		OddjobListableBeanFactory beanFactory = new OddjobListableBeanFactory();
+		beanFactory.registerBeanDefinition("apple", 
+				new RootBeanDefinition(Apple.class));
+		beanFactory.registerBeanDefinition("biscuit", 
+				new RootBeanDefinition(Biscuit.class));
+		
+		beanFactory.deferResolution(Collections.singleton("apple"), 
+				name -> {});
+		
+		try {
+			beanFactory.deferResolution(Arrays.asList("biscuit", "apple"), 
+					name -> {});
+			fail("Expected to fail.");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		
+		assertTrue(beanFactory.isDeferred("apple"));
+		assertFalse(beanFactory.isDeferred("biscuit"));
+	}
+	
+	public static class Counted implements DisposableBean {
+		
+		static final AtomicInteger created = new AtomicInteger();
+		
+		static final AtomicInteger destroyed = new AtomicInteger();
+		
+		private Counted other;
+		
+		public Counted() {
+			created.incrementAndGet();
+		}
+		
+		public void setOther(Counted other) {
+			this.other = other;
+		}
+		
+		@Override
+		public void destroy() {
+			destroyed.incrementAndGet();
+		}
+	}
+	
+	@Test
+	public void testParallelInstantiationRegistersAsSpringWould() {
+		
+		Counted.created.set(0);
+		Counted.destroyed.set(0);
+		
+		OddjobListableBeanFactory beanFactory = new OddjobListableBeanFactory();
+		beanFactory.setInstantiationThreads(8);
+		
+		GenericApplicationContext applicationContext = 
+				new GenericApplicationContext(beanFactory);
+		
+		applicationContext.registerBeanDefinition("common", 
+				new RootBeanDefinition(Counted.class));
+		
+		int count = 100;
+		for (int i = 0; i < count; ++i) {
+			RootBeanDefinition definition = 
+					new RootBeanDefinition(Counted.class);
+			definition.getPropertyValues().add("other", 
+					new RuntimeBeanReference("common"));
+			applicationContext.registerBeanDefinition("bean" + i, definition);
+		}
+		
+		applicationContext.refresh();
+		
+		assertEquals(count + 1, Counted.created.get());
+		assertEquals(count, beanFactory.getDependentBeans("common").length);
+		
+		Counted common = applicationContext.getBean("common", Counted.class);
+		for (int i = 0; i < count; ++i) {
+			assertSame(common, applicationContext.getBean(
+					"bean" + i, Counted.class).other);
+		}
+		
+		applicationContext.close();
+		
+		assertEquals(count + 1, Counted.destroyed.get());
+	}
+}
@@ -2,7 +2,10 @@ package org.oddjob.spring;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.junit.Test;
@@ -10,6 +13,9 @@ import org.oddjob.arooa.ArooaSession;
 import org.oddjob.arooa.convert.ArooaConversionException;
 import org.oddjob.arooa.standard.StandardArooaSession;
 import org.oddjob.arooa.standard.StandardPropertyLookup;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
@@ -176,6 +182,242 @@ public class OddjobPropertyConfigurerTest {
 		context.close();
 	}
 	
+	@Test
+	public void testParallelResolve() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		Properties properties = new Properties();
+		properties.setProperty("favourite.fruit", "apple");
+		
+		session.getPropertyManager().addPropertyLookup(
+				new StandardPropertyLookup(properties, "TEST"));
+		
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		
+		int count = OddjobPropertyConfigurer.PARALLEL_THRESHOLD * 2;
+		
+		for (int i = 0; i < count; ++i) {
+			GenericBeanDefinition definition = new GenericBeanDefinition();
+			definition.setBeanClass(SomeBean.class);
+			definition.getPropertyValues().add("one", 
+					"${favourite.fruit} " + i);
+			definition.getPropertyValues().add("two", 
+					"${favourite.fruit} " + (count - i));
+			beanFactory.registerBeanDefinition("bean" + i, definition);
+		}
+		
+		OddjobPropertyConfigurer test = new OddjobPropertyConfigurer(session);
+		test.setParallel(true);
+		
+		test.postProcessBeanFactory(beanFactory);
+		
+		for (int i = 0; i < count; ++i) {
+			assertEquals("apple " + i, beanFactory.getBeanDefinition("bean" + i)
+					.getPropertyValues().get("one"));
+		}
+		
+		List<String> expected = new ArrayList<String>();
+		expected.add("${favourite.fruit} 0");
+		expected.add("${favourite.fruit} " + count);
+		expected.add("${favourite.fruit} 1");
+		expected.add("${favourite.fruit} " + (count - 1));
+		
+		assertEquals(expected, new ArrayList<String>(
+				test.getResolvedValues().keySet()).subList(0, 4));
+		assertEquals(count + 1, test.getResolvedValues().size());
+	}
+	
+	@Test
+	public void testDeferredResolution() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		Properties properties = new Properties();
+		properties.setProperty("favourite.fruit", "apple");
+		
+		session.getPropertyManager().addPropertyLookup(
+				new StandardPropertyLookup(properties, "TEST"));
+		
+		OddjobListableBeanFactory beanFactory = new OddjobListableBeanFactory();
+		
+		GenericBeanDefinition eager = new GenericBeanDefinition();
+		eager.setBeanClass(SomeBean.class);
+		eager.getPropertyValues().add("one", "${favourite.fruit}");
+		beanFactory.registerBeanDefinition("eager", eager);
+		
+		GenericBeanDefinition lazy = new GenericBeanDefinition();
+		lazy.setBeanClass(SomeBean.class);
+		lazy.setLazyInit(true);
+		lazy.getPropertyValues().add("one", "${favourite.fruit}");
+		beanFactory.registerBeanDefinition("lazy", lazy);
+		
+		OddjobPropertyConfigurer test = new OddjobPropertyConfigurer(session);
+		test.setDeferResolution(true);
+		
+		test.postProcessBeanFactory(beanFactory);
+		
+		assertEquals(false, beanFactory.isDeferred("eager"));
+		assertEquals(true, beanFactory.isDeferred("lazy"));
+		
+		assertEquals("apple", eager.getPropertyValues().get("one"));
+		assertEquals("${favourite.fruit}", lazy.getPropertyValues().get("one"));
+		
+		SomeBean bean = beanFactory.getBean("lazy", SomeBean.class);
+		
+		assertEquals("apple", bean.one);
+		assertEquals(false, beanFactory.isDeferred("lazy"));
+		assertEquals("apple", lazy.getPropertyValues().get("one"));
+	}
+	
+	/**
+	 * Post process a factory with a lazy definition and check it has been
+	 * resolved straight away rather than deferred.
+	 */
+	static void assertNotDeferred(GenericBeanDefinition lazy) {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		Properties properties = new Properties();
+		properties.setProperty("favourite.fruit", "apple");
+		properties.setProperty("some.name", "some");
+		
+		session.getPropertyManager().addPropertyLookup(
+				new StandardPropertyLookup(properties, "TEST"));
+		
+		OddjobListableBeanFactory beanFactory = new OddjobListableBeanFactory();
+		
+		lazy.setLazyInit(true);
+		lazy.getPropertyValues().add("one", "${favourite.fruit}");
+		beanFactory.registerBeanDefinition("lazy", lazy);
+		
+		OddjobPropertyConfigurer test = new OddjobPropertyConfigurer(session);
+		test.setDeferResolution(true);
+		
+		test.postProcessBeanFactory(beanFactory);
+		
+		assertEquals(false, beanFactory.isDeferred("lazy"));
+		assertEquals("apple", lazy.getPropertyValues().get("one"));
+	}
+	
+	@Test
+	public void testPlaceholderInParentNameNotDeferred() {
+		
+		GenericBeanDefinition lazy = new GenericBeanDefinition();
+		lazy.setParentName("${some.name}");
+		
+		assertNotDeferred(lazy);
+		
+		assertEquals("some", lazy.getParentName());
+	}
+	
+	@Test
+	public void testPlaceholderInFactoryBeanNameNotDeferred() {
+		
+		GenericBeanDefinition lazy = new GenericBeanDefinition();
+		lazy.setFactoryBeanName("${some.name}");
+		lazy.setFactoryMethodName("create");
+		
+		assertNotDeferred(lazy);
+		
+		assertEquals("some", lazy.getFactoryBeanName());
+	}
+	
+	@Test
+	public void testPlaceholderInFactoryMethodNameNotDeferred() {
+		
+		GenericBeanDefinition lazy = new GenericBeanDefinition();
+		lazy.setBeanClass(SomeBean.class);
+		lazy.setFactoryMethodName("${some.name}");
+		
+		assertNotDeferred(lazy);
+		
+		assertEquals("some", lazy.getFactoryMethodName());
+	}
+	
+	@Test
+	public void testRebindDefinitions() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		Apple fruit = new Apple();
+		fruit.setColour("red");
+		
+		session.getBeanRegistry().register("fruit", fruit);
+		
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		
+		GenericBeanDefinition apple = new GenericBeanDefinition();
+		apple.setBeanClass(Apple.class);
+		apple.getPropertyValues().add("colour", "${fruit.colour}");
+		beanFactory.registerBeanDefinition("apple", apple);
+		
+		GenericBeanDefinition other = new GenericBeanDefinition();
+		other.setBeanClass(SomeBean.class);
+		other.getPropertyValues().add("one", "Nothing to resolve");
+		beanFactory.registerBeanDefinition("other", other);
+		
+		OddjobPropertyConfigurer test = new OddjobPropertyConfigurer(session);
+		test.setRecordBindings(true);
+		
+		test.postProcessBeanFactory(beanFactory);
+		
+		assertEquals("red", apple.getPropertyValues().get("colour"));
+		
+		assertEquals(Collections.singleton("${fruit.colour}"), 
+				test.getBindings().getExpressions("apple"));
+		assertEquals(0, test.getBindings().getExpressions("other").size());
+		
+		assertEquals(0, test.rebindDefinitions().size());
+		
+		fruit.setColour("green");
+		
+		Map<String, BeanDefinition> rebound = test.rebindDefinitions();
+		
+		assertEquals(Collections.singleton("apple"), rebound.keySet());
+		assertEquals("green", rebound.get("apple")
+				.getPropertyValues().get("colour"));
+		assertEquals("red", apple.getPropertyValues().get("colour"));
+		
+		assertEquals(0, test.rebindDefinitions().size());
+	}
+	
+	@Test
+	public void testParsedExpressionsShared() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		Properties properties = new Properties();
+		properties.setProperty("favourite.fruit", "apple");
+		
+		session.getPropertyManager().addPropertyLookup(
+				new StandardPropertyLookup(properties, "TEST"));
+		
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		
+		GenericBeanDefinition definition = new GenericBeanDefinition();
+		definition.setBeanClass(SomeBean.class);
+		definition.getPropertyValues().add("one", "My ${favourite.fruit}");
+		definition.getPropertyValues().add("two", "Nothing to resolve");
+		beanFactory.registerBeanDefinition("some", definition);
+		
+		OddjobPropertyConfigurer test = new OddjobPropertyConfigurer(session);
+		
+		test.postProcessBeanFactory(beanFactory);
+		
+		assertEquals("My apple", definition.getPropertyValues().get("one"));
+		
+		ParsedExpressionCache cache = ParsedExpressionCache.forSession(session);
+		
+		assertEquals(true, cache.contains("My ${favourite.fruit}"));
+		assertEquals(false, cache.contains("Nothing to resolve"));
+		
+		assertEquals("apple", test.createPropertySource().getProperty(
+				"favourite.fruit"));
+		
+		assertEquals(true, cache.contains("${favourite.fruit}"));
+	}
+	
 	public static class SomeBean  {
 		
 		private String one;
@@ -0,0 +1,49 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.standard.StandardArooaSession;
+import org.oddjob.arooa.standard.StandardPropertyLookup;
+import org.springframework.core.env.StandardEnvironment;
+
+public class OddjobPropertySourceTest {
+
+	@Test
+	public void testResolvesFromOddjob() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		Properties properties = new Properties();
+		properties.setProperty("favourite.fruit", "apple");
+		
+		session.getPropertyManager().addPropertyLookup(
+				new StandardPropertyLookup(properties, "TEST"));
+		
+		Map<String, String> resolved = new LinkedHashMap<String, String>();
+		
+		OddjobPropertySource test = new OddjobPropertySource(session, resolved);
+		
+		assertEquals("apple", test.getProperty("favourite.fruit"));
+		assertNull(test.getProperty("favourite.pizza"));
+		
+		assertEquals("apple", resolved.get("${favourite.fruit}"));
+		assertEquals(true, resolved.containsKey("${favourite.pizza}"));
+		
+		test.endRefresh();
+		
+		assertEquals("apple", test.getProperty("favourite.fruit"));
+		
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.getPropertySources().addLast(test);
+		
+		assertEquals("My favourite is apple", environment.resolvePlaceholders(
+				"My favourite is ${favourite.fruit}"));
+	}
+}
@@ -0,0 +1,43 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+public class ParallelBeanDefinitionLoaderTest {
+
+	@Test
+	public void testSameResultAsSequential() {
+		
+		List<Resource> sources = Arrays.<Resource>asList(
+				new ClassPathResource("org/oddjob/spring/ParallelBeanDefinitionLoaderTest1.spg.xml"),
+				new ClassPathResource("org/oddjob/spring/ParallelBeanDefinitionLoaderTest2.spg.xml"));
+		
+		GenericXmlApplicationContext sequential = new GenericXmlApplicationContext(
+				sources.toArray(new Resource[sources.size()]));
+		
+		GenericApplicationContext test = new GenericApplicationContext();
+		
+		new ParallelBeanDefinitionLoader(test).loadBeanDefinitions(sources);
+		
+		test.refresh();
+		
+		assertEquals(Arrays.asList(sequential.getBeanDefinitionNames()), 
+				Arrays.asList(test.getBeanDefinitionNames()));
+		
+		assertEquals("green", test.getBean("apple", Apple.class).getColour());
+		assertEquals("one", test.getBean("org.oddjob.spring.Apple#0", Apple.class).getColour());
+		assertEquals("two", test.getBean("org.oddjob.spring.Apple#1", Apple.class).getColour());
+		assertEquals("one", test.getBean("org.oddjob.spring.Apple", Apple.class).getColour());
+		
+		sequential.close();
+		test.close();
+	}
+}
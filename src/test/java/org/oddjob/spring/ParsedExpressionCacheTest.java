@@ -0,0 +1,43 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.runtime.ParsedExpression;
+import org.oddjob.arooa.standard.StandardArooaSession;
+
+public class ParsedExpressionCacheTest {
+
+	@Test
+	public void testSharedBySession() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		ParsedExpressionCache test = ParsedExpressionCache.forSession(session);
+		
+		assertSame(test, ParsedExpressionCache.forSession(session));
+		assertNotSame(test, ParsedExpressionCache.forSession(
+				new StandardArooaSession()));
+		
+		ParsedExpression expression = test.parse("${favourite.fruit}");
+		
+		assertSame(expression, test.parse("${favourite.fruit}"));
+		assertEquals(false, expression.isConstant());
+	}
+	
+	@Test
+	public void testHasPlaceholder() {
+		
+		assertEquals(true, ParsedExpressionCache.hasPlaceholder(
+				"My ${favourite.fruit}"));
+		assertEquals(true, ParsedExpressionCache.hasPlaceholder(
+				"$${favourite.fruit}"));
+		assertEquals(false, ParsedExpressionCache.hasPlaceholder(
+				"apples"));
+		assertEquals(false, ParsedExpressionCache.hasPlaceholder(
+				"$$ and {}"));
+	}
+}
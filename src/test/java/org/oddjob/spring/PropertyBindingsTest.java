@@ -0,0 +1,89 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.ManagedList;
+
+public class PropertyBindingsTest {
+
+	@Test
+	public void testCopyIsDeep() {
+		
+		ManagedList<Object> colours = new ManagedList<Object>();
+		colours.add(new TypedStringValue("${fruit.colour}"));
+		
+		GenericBeanDefinition definition = new GenericBeanDefinition();
+		definition.setBeanClassName(Apple.class.getName());
+		definition.getPropertyValues().add("colours", colours);
+		definition.getConstructorArgumentValues().addIndexedArgumentValue(
+				0, new TypedStringValue("${fruit.name}"));
+		
+		BeanDefinition copy = PropertyBindings.copy(definition);
+		
+		((TypedStringValue) colours.get(0)).setValue("red");
+		((TypedStringValue) definition.getConstructorArgumentValues()
+				.getIndexedArgumentValue(0, null).getValue()).setValue("apple");
+		
+		ManagedList<?> copiedColours = (ManagedList<?>) 
+				copy.getPropertyValues().get("colours");
+		
+		assertEquals("${fruit.colour}", 
+				((TypedStringValue) copiedColours.get(0)).getValue());
+		assertEquals("${fruit.name}", ((TypedStringValue) 
+				copy.getConstructorArgumentValues()
+					.getIndexedArgumentValue(0, null).getValue()).getValue());
+	}
+	
+	@Test
+	public void testBeansUsing() {
+		
+		PropertyBindings test = new PropertyBindings();
+		
+		test.bind("apple", new GenericBeanDefinition(), 
+				Arrays.asList("${fruit.colour}", "${fruit.size}"));
+		test.bind("pear", new GenericBeanDefinition(), 
+				Arrays.asList("${fruit.size}"));
+		test.bind("plain", new GenericBeanDefinition(), 
+				Collections.<String>emptyList());
+		
+		assertEquals(Collections.singleton("apple"), 
+				test.beansUsing(Collections.singleton("${fruit.colour}")));
+		assertEquals(2, test.beansUsing(
+				Collections.singleton("${fruit.size}")).size());
+		assertNull(test.original("plain"));
+		
+		test.forget("apple");
+		
+		assertEquals(Collections.singleton("pear"), 
+				test.beansUsing(Arrays.asList("${fruit.colour}", "${fruit.size}")));
+	}
+	
+	@Test
+	public void testBindingNoExpressionsForgets() {
+		
+		PropertyBindings test = new PropertyBindings();
+		
+		test.bind("apple", new GenericBeanDefinition(), 
+				Arrays.asList("${fruit.colour}"));
+		test.bind("apple", new GenericBeanDefinition(), 
+				Collections.<String>emptyList());
+		
+		assertEquals(0, test.getExpressions().size());
+		assertNull(test.original("apple"));
+		
+		test.bind("pear", new GenericBeanDefinition(), 
+				Arrays.asList("${fruit.size}"));
+		test.bind("pear", null, Arrays.asList("${fruit.size}"));
+		
+		assertEquals(0, test.beansUsing(
+				Collections.singleton("${fruit.size}")).size());
+	}
+}
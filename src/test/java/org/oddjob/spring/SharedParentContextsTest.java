@@ -0,0 +1,114 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.standard.StandardArooaSession;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ConfigurableApplicationContext;
+
+public class SharedParentContextsTest {
+
+	public static class ParentWatcher 
+	implements ApplicationContextAware, DisposableBean {
+		
+		static volatile boolean parentActiveOnDestroy;
+		
+		private ApplicationContext applicationContext;
+		
+		@Override
+		public void setApplicationContext(ApplicationContext applicationContext) {
+			this.applicationContext = applicationContext;
+		}
+		
+		@Override
+		public void destroy() {
+			parentActiveOnDestroy = ((ConfigurableApplicationContext) 
+					applicationContext.getParent()).isActive();
+		}
+	}
+
+	@Test
+	public void testParentSharedAndClosedWithLastChild() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		SpringBase component1 = new SpringBase();
+		component1.setArooaSession(session);
+		component1.setResources(new String[] { 
+				"org/oddjob/spring/ParallelBeanDefinitionLoaderTest1.spg.xml" });
+		
+		SpringBase component2 = new SpringBase();
+		component2.setArooaSession(session);
+		component2.setResources(new String[] { 
+				"org/oddjob/spring/ParallelBeanDefinitionLoaderTest2.spg.xml" });
+		
+		int before = SharedParentContexts.size();
+		
+		ConfigurableApplicationContext context1 = 
+				component1.loadApplicationContext();
+		ConfigurableApplicationContext context2 = 
+				component2.loadApplicationContext();
+		
+		ApplicationContext parent = context1.getParent();
+		assertSame(parent, context2.getParent());
+		assertEquals(before + 1, SharedParentContexts.size());
+		
+		context1.close();
+		
+		assertEquals(before + 1, SharedParentContexts.size());
+		
+		context2.close();
+		
+		assertEquals(before, SharedParentContexts.size());
+		assertFalse(((ConfigurableApplicationContext) parent).isActive());
+	}
+	
+	@Test
+	public void testParentReleasedWhenLoadFails() {
+		
+		SpringBase component = new SpringBase();
+		component.setArooaSession(new StandardArooaSession());
+		
+		int before = SharedParentContexts.size();
+		
+		try {
+			component.loadApplicationContext();
+			fail("No config should fail.");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		
+		assertEquals(before, SharedParentContexts.size());
+	}
+	
+	@Test
+	public void testParentOutlivesChildBeans() {
+		
+		SpringBase component = new SpringBase();
+		component.setArooaSession(new StandardArooaSession());
+		component.setConfigClasses(new String[] { 
+				ParentWatcher.class.getName() });
+		
+		ConfigurableApplicationContext context = 
+				component.loadApplicationContext();
+		
+		ConfigurableApplicationContext parent = 
+				(ConfigurableApplicationContext) context.getParent();
+		
+		ParentWatcher.parentActiveOnDestroy = false;
+		
+		context.close();
+		
+		assertTrue(ParentWatcher.parentActiveOnDestroy);
+		assertFalse(parent.isActive());
+	}
+}
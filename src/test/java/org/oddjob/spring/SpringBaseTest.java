@@ -0,0 +1,73 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.junit.Test;
+import org.oddjob.arooa.ArooaSession;
+import org.oddjob.arooa.standard.StandardArooaSession;
+import org.oddjob.arooa.standard.StandardPropertyLookup;
+import org.oddjob.spring.config.AppleConfig;
+import org.springframework.context.ConfigurableApplicationContext;
+
+public class SpringBaseTest {
+
+	@Test
+	public void testConfigClasses() {
+		
+		ArooaSession session = new StandardArooaSession();
+		
+		Properties props = new Properties();
+		props.setProperty("apple.colour", "red");
+		
+		session.getPropertyManager().addPropertyLookup(
+				new StandardPropertyLookup(props, "TEST"));
+		
+		SpringBase test = new SpringBase();
+		test.setArooaSession(session);
+		test.setConfigClasses(new String[] { AppleConfig.class.getName() });
+		
+		ConfigurableApplicationContext applicationContext = 
+				test.loadApplicationContext();
+		
+		assertEquals("red", applicationContext.getBean(
+				"apple", Apple.class).getColour());
+		
+		applicationContext.close();
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testMissingConfigClass() {
+		
+		SpringBase test = new SpringBase();
+		test.setArooaSession(new StandardArooaSession());
+		test.setConfigClasses(new String[] { "org.oddjob.spring.NoSuchConfig" });
+		
+		test.loadApplicationContext();
+	}
+	
+	@Test
+	public void testStartupTimings() {
+		
+		SpringBase test = new SpringBase();
+		test.setArooaSession(new StandardArooaSession());
+		test.setResources(new String[] { 
+				"org/oddjob/spring/ParallelBeanDefinitionLoaderTest1.spg.xml" });
+		test.setSlowestCount(1);
+		
+		ConfigurableApplicationContext applicationContext = 
+				test.loadApplicationContext();
+		
+		assertTrue(test.getRefreshTime() >= 0);
+		assertEquals(1, test.getSlowestBeans().length);
+		
+		String report = test.getStartupReport();
+		assertTrue(report.contains(SpringBase.XML_PARSE_STEP));
+		assertTrue(report.contains(OddjobPropertyConfigurer.RESOLVE_STEP));
+		assertTrue(report.contains(StartupRecorder.BEAN_INSTANTIATE_STEP));
+		
+		applicationContext.close();
+	}
+}
@@ -1,10 +1,15 @@
 package org.oddjob.spring;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import org.junit.Test;
 import org.oddjob.Oddjob;
 import org.oddjob.OddjobLookup;
 import org.oddjob.arooa.convert.ArooaConversionException;
+import org.oddjob.arooa.registry.BeanDirectory;
+import org.oddjob.arooa.standard.StandardArooaSession;
 import org.oddjob.arooa.xml.XMLConfiguration;
 
 
@@ -24,4 +29,31 @@ public class SpringBeansTest {
 		
 	}
 	
+	@Test
+	public void testSameDirectoryUntilReset() {
+		
+		SpringBeans test = new SpringBeans();
+		test.setArooaSession(new StandardArooaSession());
+		test.setResources(new String[] { 
+				"org/oddjob/spring/ParallelBeanDefinitionLoaderTest1.spg.xml" });
+		
+		test.run();
+		
+		BeanDirectory directory = test.provideBeanDirectory();
+		assertSame(directory, test.provideBeanDirectory());
+		
+		assertEquals("red", ((Apple) directory.lookup("apple")).getColour());
+		
+		test.reset();
+		
+		assertNull(test.provideBeanDirectory());
+		
+		try {
+			directory.lookup("apple");
+			fail("Stale directory should fail.");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+	}
 }
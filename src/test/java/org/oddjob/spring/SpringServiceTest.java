@@ -2,17 +2,34 @@ package org.oddjob.spring;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.oddjob.Oddjob;
+import org.oddjob.arooa.registry.BeanDirectory;
+import org.oddjob.arooa.standard.StandardArooaSession;
 import org.oddjob.arooa.xml.XMLConfiguration;
 import org.oddjob.input.InputHandler;
 import org.oddjob.input.InputRequest;
 import org.oddjob.state.ParentState;
+import org.springframework.core.io.DefaultResourceLoader;
 
 public class SpringServiceTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testMyQuery() {
 		
@@ -39,4 +56,225 @@ public class SpringServiceTest {
 				oddjob.lastStateEvent().getState());
 		
 	}
+
+	@Test
+	public void testAsyncStart() {
+		
+		SpringService test = new SpringService();
+		test.setArooaSession(new StandardArooaSession());
+		test.setResources(new String[] { 
+				"org/oddjob/spring/BeanDirectoryAdaptorTest.spg.xml" });
+		test.setAsync(true);
+		
+		test.start();
+		
+		BeanDirectory directory = test.provideBeanDirectory();
+		
+		assertNotNull(directory);
+		
+		Object bean = directory.lookup("my-bean");
+		
+		assertEquals(true, bean instanceof BeanDirectoryAdaptorTest.MyBean);
+		assertEquals(SpringService.Status.READY, test.getStatus());
+		
+		test.stop();
+		
+		assertEquals(SpringService.Status.STOPPED, test.getStatus());
+		assertNull(test.provideBeanDirectory());
+	}
+
+	static void write(File file, String appleColour, boolean withPear) 
+	throws IOException {
+		String xml = 
+				"<beans xmlns='http://www.springframework.org/schema/beans'" +
+				" xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'" +
+				" xsi:schemaLocation='http://www.springframework.org/schema/beans" +
+				" http://www.springframework.org/schema/beans/spring-beans.xsd'>" +
+				"<bean id='apple' class='org.oddjob.spring.Apple'>" +
+				"<property name='colour' value='" + appleColour + "'/></bean>" +
+				(withPear ? "<bean id='pear' class='org.oddjob.spring.Apple'>" +
+				"<property name='colour' value='${fruit.colour}'/></bean>" : "") +
+				"</beans>";
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testRebindAfterReload() throws IOException {
+		
+		File file = folder.newFile("beans.xml");
+		write(file, "${fruit.colour}", true);
+		
+		StandardArooaSession session = new StandardArooaSession();
+		
+		Apple fruit = new Apple();
+		fruit.setColour("red");
+		
+		session.getBeanRegistry().register("fruit", fruit);
+		
+		SpringService test = new SpringService();
+		test.setArooaSession(session);
+		test.setFiles(new String[] { "file:" + file.getAbsolutePath() });
+		test.setRebindable(true);
+		
+		test.start();
+		
+		BeanDirectory directory = test.provideBeanDirectory();
+		
+		assertEquals("red", ((Apple) directory.lookup("apple")).getColour());
+		assertEquals("red", ((Apple) directory.lookup("pear")).getColour());
+		
+		write(file, "green", false);
+		
+		test.filesChanged(Collections.singletonList(
+				new DefaultResourceLoader().getResource(
+						"file:" + file.getAbsolutePath())));
+		
+		assertEquals("green", ((Apple) directory.lookup("apple")).getColour());
+		assertNull(directory.lookup("pear"));
+		
+		fruit.setColour("yellow");
+		
+		assertEquals(0, test.rebind().size());
+		
+		assertEquals("green", ((Apple) directory.lookup("apple")).getColour());
+		assertNull(directory.lookup("pear"));
+		
+		test.stop();
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testRebindNotRebindable() {
+		
+		SpringService test = new SpringService();
+		test.setArooaSession(new StandardArooaSession());
+		test.setResources(new String[] { 
+				"org/oddjob/spring/BeanDirectoryAdaptorTest.spg.xml" });
+		
+		test.start();
+		try {
+			test.rebind();
+		}
+		finally {
+			test.stop();
+		}
+	}
+	
+	static void writeWithPostProcessor(File file, String appleClass) 
+	throws IOException {
+		String xml = 
+				"<beans xmlns='http://www.springframework.org/schema/beans'" +
+				" xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'" +
+				" xsi:schemaLocation='http://www.springframework.org/schema/beans" +
+				" http://www.springframework.org/schema/beans/spring-beans.xsd'>" +
+				"<bean class='org.springframework.context.support.PropertySourcesPlaceholderConfigurer'/>" +
+				"<bean id='apple' class='" + appleClass + "'/>" +
+				"</beans>";
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testCurrentContextKeptUntilNewOneLoaded() throws IOException {
+		
+		File file = folder.newFile("beans.xml");
+		writeWithPostProcessor(file, "org.oddjob.spring.Apple");
+		
+		SpringService test = new SpringService();
+		test.setArooaSession(new StandardArooaSession());
+		test.setFiles(new String[] { "file:" + file.getAbsolutePath() });
+		
+		test.start();
+		
+		BeanDirectory directory = test.provideBeanDirectory();
+		Object apple = directory.lookup("apple");
+		
+		writeWithPostProcessor(file, "org.oddjob.spring.NoSuchApple");
+		
+		test.filesChanged(Collections.singletonList(
+				new DefaultResourceLoader().getResource(
+						"file:" + file.getAbsolutePath())));
+		
+		assertSame(directory, test.provideBeanDirectory());
+		assertSame(apple, directory.lookup("apple"));
+		assertEquals(SpringService.Status.READY, test.getStatus());
+		
+		writeWithPostProcessor(file, "org.oddjob.spring.Biscuit");
+		
+		test.filesChanged(Collections.singletonList(
+				new DefaultResourceLoader().getResource(
+						"file:" + file.getAbsolutePath())));
+		
+		BeanDirectory reloaded = test.provideBeanDirectory();
+		
+		assertNotSame(directory, reloaded);
+		assertTrue(reloaded.lookup("apple") instanceof Biscuit);
+		
+		test.stop();
+	}
+	
+	static void writeWithEater(File file, String appleClass) 
+	throws IOException {
+		String xml = 
+				"<beans xmlns='http://www.springframework.org/schema/beans'" +
+				" xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'" +
+				" xsi:schemaLocation='http://www.springframework.org/schema/beans" +
+				" http://www.springframework.org/schema/beans/spring-beans.xsd'>" +
+				"<bean id='apple' class='" + appleClass + "'/>" +
+				"<bean id='eater' class='org.oddjob.spring.SnackEater'>" +
+				"<property name='apple' ref='apple'/></bean>" +
+				"</beans>";
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testCurrentContextKeptWhenNewBeanFails() throws IOException {
+		
+		File file = folder.newFile("beans.xml");
+		writeWithEater(file, "org.oddjob.spring.Apple");
+		
+		SpringService test = new SpringService();
+		test.setArooaSession(new StandardArooaSession());
+		test.setFiles(new String[] { "file:" + file.getAbsolutePath() });
+		
+		test.start();
+		
+		BeanDirectory directory = test.provideBeanDirectory();
+		
+		writeWithEater(file, "org.oddjob.spring.BadApple");
+		
+		test.filesChanged(Collections.singletonList(
+				new DefaultResourceLoader().getResource(
+						"file:" + file.getAbsolutePath())));
+		
+		assertSame(directory, test.provideBeanDirectory());
+		assertEquals(SpringService.Status.READY, test.getStatus());
+		
+		Object apple = directory.lookup("apple");
+		assertTrue(apple instanceof Apple);
+		assertFalse(apple instanceof BadApple);
+		assertSame(apple, ((SnackEater) directory.lookup("eater")).getApple());
+		
+		test.stop();
+	}
+	
+	@Test
+	public void testAsyncFailureReported() 
+	throws InterruptedException, ExecutionException, TimeoutException {
+		
+		SpringService test = new SpringService();
+		test.setArooaSession(new StandardArooaSession());
+		test.setResources(new String[] { 
+				"org/oddjob/spring/NoSuchConfig.spg.xml" });
+		test.setAsync(true);
+		
+		CompletableFuture<Throwable> failure = 
+				new CompletableFuture<Throwable>();
+		test.acceptExceptionListener(failure::complete);
+		
+		test.start();
+		
+		assertNotNull(failure.get(30, TimeUnit.SECONDS));
+		assertEquals(SpringService.Status.FAILED, test.getStatus());
+		
+		test.stop();
+	}
 }
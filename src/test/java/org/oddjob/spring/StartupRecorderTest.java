@@ -0,0 +1,65 @@
+package org.oddjob.spring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.metrics.StartupStep;
+
+public class StartupRecorderTest {
+
+	@Test
+	public void testNestedSteps() throws InterruptedException {
+		
+		StartupRecorder test = new StartupRecorder();
+		
+		StartupStep outer = test.start(StartupRecorder.BEAN_INSTANTIATE_STEP)
+				.tag(StartupRecorder.BEAN_NAME_TAG, "outer");
+		
+		StartupStep inner = test.start(StartupRecorder.BEAN_INSTANTIATE_STEP)
+				.tag(StartupRecorder.BEAN_NAME_TAG, "inner");
+		
+		Thread.sleep(50);
+		
+		inner.end();
+		outer.end();
+		
+		assertEquals(outer.getId(), inner.getParentId().longValue());
+		assertNull(outer.getParentId());
+		
+		List<StartupRecorder.Step> steps = test.getSteps();
+		assertEquals(2, steps.size());
+		assertEquals("outer", steps.get(0).getTag(StartupRecorder.BEAN_NAME_TAG));
+		
+		List<StartupRecorder.Step> slowest = test.getSlowestBeans(1);
+		assertEquals(1, slowest.size());
+		assertEquals("inner", slowest.get(0).getTag(StartupRecorder.BEAN_NAME_TAG));
+		
+		String[] lines = test.getReport().split(System.lineSeparator());
+		assertEquals(2, lines.length);
+		assertEquals(true, lines[1].startsWith("  "));
+	}
+	
+	@Test
+	public void testOnlyCapacityStepsKept() {
+		
+		StartupRecorder test = new StartupRecorder(2);
+		
+		StartupStep outer = test.start("outer");
+		for (int i = 0; i < 5; ++i) {
+			test.start("inner").end();
+		}
+		outer.end();
+		
+		List<StartupRecorder.Step> steps = test.getSteps();
+		assertEquals(2, steps.size());
+		assertEquals("inner", steps.get(0).getName());
+		assertEquals(4, test.getDropped());
+		
+		String[] lines = test.getReport().split(System.lineSeparator());
+		assertEquals(3, lines.length);
+		assertEquals("4 more steps not recorded.", lines[2]);
+	}
+}